@@ -3,7 +3,8 @@ import java.awt.Graphics2D;
 import java.awt.Color;
 import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
-import java.Math;
+import java.lang.Math;
+import java.util.Arrays;
 
 public class Car {
     private float x, y;
@@ -16,6 +17,7 @@ public class Car {
     private float[] steeringBehavior;
     private long timeTraveled;
     private int[] segmentsPassed;
+    private int lastSegment;
     public static final int THRESHOLD_CHANGEDIR = 0;
     public static final int ANGLE_CHANGEDIR = 1;
     public static final int THRESHOLD_ACCELERATE = 2;
@@ -37,6 +39,21 @@ public class Car {
      * @param drawHeight Size of the car in a (-1, 1) coordinate system; will then be scaled to pixel coordinates
      */
     public Car(float startX, float startY, float startDirX, float startDirY, float startSpeed, float drawWidth, float drawHeight) {
+        width = drawWidth;
+        height = drawHeight;
+        reset(startX, startY, startDirX, startDirY, startSpeed);
+    }
+
+    /**
+     * Puts the car back to the start with a clean state, so that it can be reused for a new run without allocating a new car.
+     * The steering behavior is kept until it is overwritten by setSteeringBehavior.
+     * @param startX Starting position in the (-1, 1) coordinate system
+     * @param startY Starting position in the (-1, 1) coordinate system
+     * @param startDirX Initial direction vector (-1, 1) coordinate system; will be normalized
+     * @param startDirY Initial direction vector (-1, 1) coordinate system; will be normalized
+     * @param startSpeed Initial speed of the car in pixels per second
+     */
+    public void reset(float startX, float startY, float startDirX, float startDirY, float startSpeed) {
         x = startX;
         y = startY;
 
@@ -46,23 +63,28 @@ public class Car {
         dirY = startDirY / length;     
         
         speed = startSpeed;
-        width = drawWidth;
-        height = drawHeight;
         color = Color.black;
         alive = true;
 
         // Since all coordinates should be in a space between -1.5 and +1.5, this should be safe
         leftMinDist = rightMinDist = 9999.0f;
         timeTraveled = 0;
+        lastSegment = -1;
+        if(null != segmentsPassed) {
+            Arrays.fill(segmentsPassed, 0);
+        }
     }
 
     /**
      * Gives the car parameters for when to change direction (and how much) as well as when to accelerate/brake (and how much).
      * @param behavior An array of size Car.NUM_PARAMETERS that contains the steering parameters specified by the public variables
-     *                  Car.THRESHOLD_CHANGEDIR, Car.ANGLE_CHANGEDIR (in radians), etc.
+     *                  Car.THRESHOLD_CHANGEDIR, Car.ANGLE_CHANGEDIR (in radians), etc. The values are copied into an
+     *                  array owned by the car, which is reused when the car is reset.
      */
     public void setSteeringBehavior(float[] behavior) {
-        steeringBehavior = new float[NUM_PARAMETERS];
+        if(null == steeringBehavior) {
+            steeringBehavior = new float[NUM_PARAMETERS];
+        }
         for(int i = 0; i < steeringBehavior.length; i++) {
             steeringBehavior[i] = behavior[i];
         }
@@ -72,6 +94,26 @@ public class Car {
         return steeringBehavior;
     }
 
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getDirX() {
+        return dirX;
+    }
+
+    public float getDirY() {
+        return dirY;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
     public float getWidth() {
         return width;
     }
@@ -126,6 +168,26 @@ public class Car {
      * @param scaleToY The viewport size in pixels to which to draw the car
      */
     public void draw(Graphics g, int startX, int startY, int scaleToX, int scaleToY) {
+        draw(g, x, y, dirX, dirY, width, height, color, startX, startY, scaleToX, scaleToY);
+    }
+
+    /**
+     * Draws a car from a given state (e.g., taken from a RenderSnapshot) to a viewport of the size defined by the scaling parameters
+     * @param g Graphics2D object to perform the drawing
+     * @param x Position of the car in the (-1, 1) coordinate system
+     * @param y Position of the car in the (-1, 1) coordinate system
+     * @param dirX Normalized direction of the car
+     * @param dirY Normalized direction of the car
+     * @param width Size of the car in a (-1, 1) coordinate system
+     * @param height Size of the car in a (-1, 1) coordinate system
+     * @param color Color to draw the car in
+     * @param startX The offset within the viewport from which to start drawing
+     * @param startY The offset within the viewport from which to start drawing
+     * @param scaleToX The viewport size in pixels to which to draw the car
+     * @param scaleToY The viewport size in pixels to which to draw the car
+     */
+    public static void draw(Graphics g, float x, float y, float dirX, float dirY, float width, float height, Color color,
+                            int startX, int startY, int scaleToX, int scaleToY) {
         Graphics2D g2d = (Graphics2D) g.create();
 
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
@@ -181,7 +243,8 @@ public class Car {
     }
 
     /**
-     * Updates the cars position and tests for collision with the level; will stop the car if it has collided
+     * Updates the cars position and tests for collision with the level; will stop the car if it has collided. The path
+     * travelled during the update is swept against the walls of the level, so large time deltas cannot tunnel through them
      * @param deltaMillis Time since last update in milliseconds (speed is measured in pixel per second, though)
      * @param l Level against which to test collision
      */
@@ -223,10 +286,18 @@ public class Car {
                 
                 float incX = dirX * speed * ((float) deltaMillis / 1000);
                 float incY = dirY * speed * ((float) deltaMillis / 1000);
+                float oldX = x, oldY = y;
 
                 x += incX;
                 y += incY;
                 timeTraveled += deltaMillis;
+
+                // Test the whole path travelled during this update, not just the point the car ended up at
+                if(sweptCollision(l, oldX, oldY)) {
+                    markSegmentsPassed(getNearestInnerSegment(l));
+                    alive = false;
+                    color = Color.red;
+                }
             }
         }
     }
@@ -235,6 +306,7 @@ public class Car {
      * Tests whether the car has crossed the inner or outer boundaries of the level. It does so by determining the 
      * nearest line segment of the level and then using the dot product to determine on which side of the line the
      * car currently is. Also measures the distance traveled by keeping log of the line segments the car has passed.
+     * If the level has a precomputed distance field, both tests are a lookup into that field instead.
      * @param l The Level object against which to test
      * @return True if a collision has occurred, false otherwise
      */
@@ -242,15 +314,22 @@ public class Car {
         int closestInner, closestOuter;
         float dotInner, dotOuter;
 
+        if(null == segmentsPassed) {
+            segmentsPassed = new int[l.getInnerVertices().length];
+        }
+
+        DistanceField field = l.getDistanceField();
+        if(null != field) {
+            markSegmentsPassed(field.getNearestInnerSegment(x, y));
+            return !field.isInside(x, y);
+        }
+
         // Test collision against inner circle
         closestInner = getNearestLine(l.getInnerVertices());
         dotInner = dotProduct(l.getInnerVertices(), closestInner);
 
         // Use collision testing also for travel distance measurement
-        if(null == segmentsPassed) {
-            segmentsPassed = new int[l.getInnerVertices().length];
-        }
-        segmentsPassed[closestInner] = 1;
+        markSegmentsPassed(closestInner);
 
         // Test collision against outer circle
         closestOuter = getNearestLine(l.getOuterVertices());
@@ -264,6 +343,123 @@ public class Car {
         return false;
     }
 
+    /**
+     * Tests whether the path from (fromX, fromY) to the current position of the car crosses the inner or outer boundary of
+     * the level. If it does, the car is moved back to the point of impact.
+     * @param l The Level object against which to test
+     * @param fromX Position of the car before the last move
+     * @param fromY Position of the car before the last move
+     * @return True if the path crosses a wall, false otherwise
+     */
+    private boolean sweptCollision(Level l, float fromX, float fromY) {
+        DistanceField field = l.getDistanceField();
+        if(null != field) {
+            float length = (float) Math.sqrt((x - fromX) * (x - fromX) + (y - fromY) * (y - fromY));
+            if(length == 0) {
+                return !field.isInside(x, y);
+            }
+
+            float hit = field.castRay(fromX, fromY, (x - fromX) / length, (y - fromY) / length, length);
+            if(hit > length) {
+                return false;
+            }
+
+            x = fromX + (x - fromX) * hit / length;
+            y = fromY + (y - fromY) * hit / length;
+            return true;
+        }
+
+        float tInner = sweep(fromX, fromY, x, y, l.getInnerVertices());
+        float tOuter = sweep(fromX, fromY, x, y, l.getOuterVertices());
+        float t = Math.min(tInner, tOuter);
+
+        if(t > 1) {
+            return false;
+        }
+
+        x = fromX + t * (x - fromX);
+        y = fromY + t * (y - fromY);
+        return true;
+    }
+
+    /**
+     * Sweeps the line from (x1, y1) to (x2, y2) against all line segments of a level edge
+     * @param x1 Starting point of the path
+     * @param y1 Starting point of the path
+     * @param x2 Ending point of the path
+     * @param y2 Ending point of the path
+     * @param vertices Vertices making up the wall of the level to test against (can be inner or outer wall)
+     * @return Fraction of the path (between 0 and 1) at which the first wall is hit; 9999.0f if no wall is hit
+     */
+    private float sweep(float x1, float y1, float x2, float y2, float[][] vertices) {
+        float firstHit = 9999.0f;
+        float curX, curY, nextX, nextY;
+
+        for(int i = 0; i < vertices.length; i++) {
+            // Get current vertex
+            curX = vertices[i][0];
+            curY = vertices[i][1];
+
+            // Get next vertex, wrapping to the first one at the end
+            if(i + 1 < vertices.length) {
+                nextX = vertices[i + 1][0];
+                nextY = vertices[i + 1][1];
+            } else {
+                nextX = vertices[0][0];
+                nextY = vertices[0][1];
+            }
+
+            float denominator = (x1 - x2) * (curY - nextY) - (y1 - y2) * (curX - nextX);
+            if(denominator == 0) continue;
+
+            float t = ((x1 - curX) * (curY - nextY) - (y1 - curY) * (curX - nextX)) / denominator;
+            float u = ((x1 - curX) * (y1 - y2) - (y1 - curY) * (x1 - x2)) / denominator;
+
+            if(t >= 0 && t <= 1 && u >= 0 && u <= 1 && t < firstHit) {
+                firstHit = t;
+            }
+        }
+
+        return firstHit;
+    }
+
+    /**
+     * Marks the given inner line segment as passed together with all segments between it and the segment the car was
+     * closest to during the last update. This way no segments are skipped if the car moves past several of them at once.
+     * The segments in between are walked in the shorter direction around the level.
+     * @param segment Index of the inner line segment the car is currently closest to
+     */
+    private void markSegmentsPassed(int segment) {
+        if(lastSegment < 0) {
+            segmentsPassed[segment] = 1;
+            lastSegment = segment;
+            return;
+        }
+
+        int n = segmentsPassed.length;
+        int forward = (segment - lastSegment + n) % n;
+        int step = forward <= n - forward ? 1 : n - 1;
+
+        for(int i = lastSegment; i != segment; i = (i + step) % n) {
+            segmentsPassed[i] = 1;
+        }
+        segmentsPassed[segment] = 1;
+        lastSegment = segment;
+    }
+
+    /**
+     * Determines the inner line segment closest to the car, using the distance field of the level if there is one
+     * @param l The level to search
+     * @return Index into the inner vertices of the level denoting the starting vertex of the closest line segment
+     */
+    private int getNearestInnerSegment(Level l) {
+        if(null != l.getDistanceField()) {
+            return l.getDistanceField().getNearestInnerSegment(x, y);
+        }
+
+        return getNearestLine(l.getInnerVertices());
+    }
+
     /**
      * Determines the nearest line segment by projecting the car position (x, y) onto the line segments of the level
      * and then calcilating the distance
@@ -333,7 +529,7 @@ public class Car {
 
     /**
      * Measures the minimum distance to the next wall on the left and right side of the car and saves this in the respective
-     * private class attributes
+     * private class attributes. If the level has a precomputed distance field, the rays are sphere traced through that field.
      * @param l The level against which to measure distances
      * @param numRays How many rays to send out from the car (half of which will be measuring the left-side distance and half
      * of which will be measuring the right-side distance)
@@ -361,8 +557,13 @@ public class Car {
             float rx2 = rx1 + dirX * rayLength;
             float ry2 = ry1 + dirY * rayLength;
 
-            float distInner = distanceToWall(rx1, ry1, rx2, ry2, l.getInnerVertices());
-            float distOuter = distanceToWall(rx1, ry1, rx2, ry2, l.getOuterVertices());
+            float distInner, distOuter;
+            if(null != l.getDistanceField()) {
+                distInner = distOuter = l.getDistanceField().castRay(rx1, ry1, dirX, dirY, rayLength);
+            } else {
+                distInner = distanceToWall(rx1, ry1, rx2, ry2, l.getInnerVertices());
+                distOuter = distanceToWall(rx1, ry1, rx2, ry2, l.getOuterVertices());
+            }
 
             if(i >= numRays / 2) {
                 if(distInner < shortestDistLeft) {
@@ -0,0 +1,219 @@
+import java.lang.Math;
+import java.util.stream.IntStream;
+
+public class DistanceField {
+    // Bounding box of the raster in the (-1, 1) coordinate system shared with the Level, and the size of one raster cell
+    private float minX, minY, cellSize;
+    private int columns, rows;
+
+    // Signed distance to the nearest wall per cell (positive on the track, negative off the track)
+    private float[] distances;
+
+    // Index of the closest inner line segment per cell (used for measuring the distance a car has traveled)
+    private int[] nearestInner;
+
+    /**
+     * Precomputes a signed distance field over the bounding box of the level. The raster is built in parallel, one row
+     * per task, and afterwards answers all queries in constant time independent of the number of level vertices.
+     * @param l The level for which to build the distance field
+     * @param resolution Number of raster cells along the longer side of the level's bounding box (e.g. 512)
+     */
+    public DistanceField(Level l, int resolution) {
+        if(resolution < 2) {
+            throw new IllegalArgumentException("resolution must be at least 2");
+        }
+
+        final float[][] inner = l.getInnerVertices();
+        final float[][] outer = l.getOuterVertices();
+
+        // The outer edge encloses the whole track, so its bounding box (plus a small border) is all the raster needs to cover
+        float maxX, maxY;
+        minX = minY = 9999.0f;
+        maxX = maxY = -9999.0f;
+        for(int i = 0; i < outer.length; i++) {
+            minX = Math.min(minX, outer[i][0]);
+            maxX = Math.max(maxX, outer[i][0]);
+            minY = Math.min(minY, outer[i][1]);
+            maxY = Math.max(maxY, outer[i][1]);
+        }
+
+        cellSize = Math.max(maxX - minX, maxY - minY) / (resolution - 1);
+        minX -= 2 * cellSize;
+        minY -= 2 * cellSize;
+        columns = (int) Math.ceil((maxX - minX) / cellSize) + 3;
+        rows = (int) Math.ceil((maxY - minY) / cellSize) + 3;
+
+        distances = new float[columns * rows];
+        nearestInner = new int[columns * rows];
+
+        IntStream.range(0, rows).parallel().forEach(row -> {
+            float py = minY + row * cellSize;
+
+            for(int column = 0; column < columns; column++) {
+                float px = minX + column * cellSize;
+                int cell = row * columns + column;
+
+                int closest = 0;
+                float shortestInner = 9999.0f;
+                for(int i = 0; i < inner.length; i++) {
+                    float dist = segmentDistance(px, py, inner, i);
+                    if(dist < shortestInner) {
+                        shortestInner = dist;
+                        closest = i;
+                    }
+                }
+
+                float shortestOuter = 9999.0f;
+                for(int i = 0; i < outer.length; i++) {
+                    shortestOuter = Math.min(shortestOuter, segmentDistance(px, py, outer, i));
+                }
+
+                float dist = Math.min(shortestInner, shortestOuter);
+                boolean onTrack = contains(outer, px, py) && !contains(inner, px, py);
+
+                distances[cell] = onTrack ? dist : -dist;
+                nearestInner[cell] = closest;
+            }
+        });
+    }
+
+    /**
+     * Tests whether a point lies on the track, i.e., between the inner and the outer edge of the level
+     * @param x Position in the (-1, 1) coordinate system
+     * @param y Position in the (-1, 1) coordinate system
+     * @return True if the point is on the track, false otherwise
+     */
+    public boolean isInside(float x, float y) {
+        return distance(x, y) > 0;
+    }
+
+    /**
+     * Returns the signed distance to the nearest wall of the level by bilinear interpolation of the raster
+     * @param x Position in the (-1, 1) coordinate system
+     * @param y Position in the (-1, 1) coordinate system
+     * @return Distance in units; positive on the track, negative off the track
+     */
+    public float distance(float x, float y) {
+        float gx = (x - minX) / cellSize;
+        float gy = (y - minY) / cellSize;
+
+        // Everything outside the raster is off the track
+        if(gx < 0 || gy < 0 || gx >= columns - 1 || gy >= rows - 1) {
+            return -cellSize;
+        }
+
+        int column = (int) gx;
+        int row = (int) gy;
+        float fx = gx - column;
+        float fy = gy - row;
+        int cell = row * columns + column;
+
+        float top = distances[cell] + fx * (distances[cell + 1] - distances[cell]);
+        float bottom = distances[cell + columns] + fx * (distances[cell + columns + 1] - distances[cell + columns]);
+        return top + fy * (bottom - top);
+    }
+
+    /**
+     * Returns the inner line segment closest to a point
+     * @param x Position in the (-1, 1) coordinate system
+     * @param y Position in the (-1, 1) coordinate system
+     * @return Index into the inner vertices of the level denoting the starting vertex of the closest line segment
+     */
+    public int getNearestInnerSegment(float x, float y) {
+        int column = Math.max(0, Math.min(columns - 1, Math.round((x - minX) / cellSize)));
+        int row = Math.max(0, Math.min(rows - 1, Math.round((y - minY) / cellSize)));
+
+        return nearestInner[row * columns + column];
+    }
+
+    /**
+     * Casts a ray by sphere tracing through the distance field: the ray is repeatedly advanced by the distance to the
+     * nearest wall, which can never overshoot a wall
+     * @param x Starting point of the ray
+     * @param y Starting point of the ray
+     * @param dirX Normalized direction of the ray
+     * @param dirY Normalized direction of the ray
+     * @param maxDist The length of the ray in units
+     * @return Distance to the wall hit by the ray in units; 9999.0f if no wall is hit within maxDist or within the step
+     *         budget, e.g. when the ray runs along a wall
+     */
+    public float castRay(float x, float y, float dirX, float dirY, float maxDist) {
+        float epsilon = cellSize * 0.5f;
+        float t = 0;
+
+        for(int i = 0; i < 128; i++) {
+            float px = x + t * dirX;
+            float py = y + t * dirY;
+            float dist = distance(px, py);
+
+            // Off the track, consistent with isInside()
+            if(dist <= 0) {
+                return t;
+            }
+
+            float step = dist;
+            if(dist < epsilon) {
+                // Close to a wall only counts as a hit if the ray is still closing in on it, so a ray leaving a wall
+                // it started next to goes on
+                step = Math.max(dist, epsilon * 0.5f);
+                if(distance(px + step * dirX, py + step * dirY) < dist) {
+                    return t;
+                }
+            }
+
+            t += step;
+            if(t > maxDist) {
+                return 9999.0f;
+            }
+        }
+
+        return 9999.0f;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Calculates the distance between a point and a line segment of a level edge
+     * @param px The point
+     * @param py The point
+     * @param vertices An array of points making up the level edge
+     * @param index Index into the above array specifying the starting point of the line segment
+     * @return Distance in units
+     */
+    private static float segmentDistance(float px, float py, float[][] vertices, int index) {
+        float curX = vertices[index][0];
+        float curY = vertices[index][1];
+        float nextX = vertices[(index + 1) % vertices.length][0];
+        float nextY = vertices[(index + 1) % vertices.length][1];
+
+        float len_sq = (nextX - curX) * (nextX - curX) + (nextY - curY) * (nextY - curY);
+        float t = ((px - curX) * (nextX - curX) + (py - curY) * (nextY - curY)) / len_sq;
+        t = Math.max(0, Math.min(1, t));
+        float lx = curX + t * (nextX - curX);
+        float ly = curY + t * (nextY - curY);
+
+        return (float) Math.sqrt((px - lx) * (px - lx) + (py - ly) * (py - ly));
+    }
+
+    /**
+     * Point-in-polygon test by counting how often a horizontal ray from the point crosses the polygon edge
+     * @param vertices An array of points making up the level edge
+     * @param px The point
+     * @param py The point
+     * @return True if the point is inside the polygon
+     */
+    private static boolean contains(float[][] vertices, float px, float py) {
+        boolean inside = false;
+
+        for(int i = 0, j = vertices.length - 1; i < vertices.length; j = i++) {
+            if((vertices[i][1] > py) != (vertices[j][1] > py)
+                && px < (vertices[j][0] - vertices[i][0]) * (py - vertices[i][1]) / (vertices[j][1] - vertices[i][1]) + vertices[i][0]) {
+                inside = !inside;
+            }
+        }
+
+        return inside;
+    }
+}
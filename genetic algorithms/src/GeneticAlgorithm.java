@@ -4,20 +4,38 @@ import java.awt.Graphics2D;
 import java.awt.Color;
 import java.awt.RenderingHints;
 import java.awt.Font;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 public class GeneticAlgorithm {
     private int generations;
     private int currentGeneration;
-    private ArrayList<Car> cars;
+    // Double-buffered car pool: the next generation is bred into the spare cars, then both arrays swap roles
+    private Car[] cars, spareCars;
     private Level level;
     private float trackWidth;
     private long waitCounter;
     private long currentGenRunTime;
     private int[] maxDistHistory, totalDistHistory, totalTimeHistory;
     private static final float CARWIDTH = 0.035f, CARHEIGHT = 0.065f;
+    private static final long MAX_RUNTIME = 15000;
+
+    // Steady-state mode: finished cars are replaced right away by children bred from a pool of recent evaluations
+    private boolean steadyState;
+    private boolean[] retired;
+    private int evaluations;
+    private float[][] poolBehavior;
+    private int[] poolDist;
+    private long[] poolTime;
+    private int poolSize, poolNext;
+    private Random random;
+    private float[] behavior;
+
+    // One update task per slice of the population, built once and reinitialized every tick, so ticks allocate nothing
+    private UpdateSlice[] slices;
+    private long tickDelta;
 
     /**
      * Sets up the genetic algorithm to train a population of cars to navigate the provided level
@@ -27,10 +45,24 @@ public class GeneticAlgorithm {
      * @param trkWidth Track width of the level (needed to position the cars randomly in valid spots)
      */
     public GeneticAlgorithm(int numGenerations, int numCars, Level l, float trkWidth) {
+        this(numGenerations, numCars, l, trkWidth, false);
+    }
+
+    /**
+     * Sets up the genetic algorithm to train a population of cars to navigate the provided level
+     * @param numGenerations How many generations of cars to train; in steady-state mode, a generation is counted every numCars
+     *                       finished cars
+     * @param numCars Number of cars to generate per generation (or to keep on the track at all times in steady-state mode)
+     * @param l Level with which to train the cars
+     * @param trkWidth Track width of the level (needed to position the cars randomly in valid spots)
+     * @param steadyStateMode True to replace each car as soon as it has finished instead of waiting for the whole generation
+     */
+    public GeneticAlgorithm(int numGenerations, int numCars, Level l, float trkWidth, boolean steadyStateMode) {
         generations = numGenerations;
         currentGeneration = 0;
-        cars = new ArrayList<Car>();
-        float[] behavior = new float[Car.NUM_PARAMETERS];
+        cars = new Car[numCars];
+        spareCars = new Car[numCars];
+        behavior = new float[Car.NUM_PARAMETERS];
         level = l;
         trackWidth = trkWidth;
         currentGenRunTime = 0;
@@ -39,19 +71,30 @@ public class GeneticAlgorithm {
         totalDistHistory = new int[numGenerations];
         totalTimeHistory = new int[numGenerations];
 
-        Random r = new Random();
+        steadyState = steadyStateMode;
+        retired = new boolean[numCars];
+        evaluations = 0;
+        poolBehavior = new float[numCars][Car.NUM_PARAMETERS];
+        poolDist = new int[numCars];
+        poolTime = new long[numCars];
+        poolSize = poolNext = 0;
+        random = new Random();
+
+        int sliceCount = Math.max(1, Math.min(numCars, ForkJoinPool.getCommonPoolParallelism() * 4));
+        slices = new UpdateSlice[sliceCount];
+        for(int s = 0; s < sliceCount; s++) {
+            slices[s] = new UpdateSlice(s * numCars / sliceCount, (s + 1) * numCars / sliceCount);
+        }
+
         for(int i = 0; i < numCars; i++) {
-            // Generate random cars
-            cars.add(generateNewCar());
+            // Generate random cars (and the spare cars that will be reused for every other generation)
+            cars[i] = new Car(0, 0, 1, 0, 0, CARWIDTH, CARHEIGHT);
+            spareCars[i] = new Car(0, 0, 1, 0, 0, CARWIDTH, CARHEIGHT);
+            placeCar(cars[i]);
 
             // Start out with completely random steering behavior
-            behavior[Car.THRESHOLD_CHANGEDIR] = r.nextFloat();
-            behavior[Car.ANGLE_CHANGEDIR] = r.nextFloat();
-            behavior[Car.THRESHOLD_ACCELERATE] = r.nextFloat();
-            behavior[Car.INCREMENT_ACCELERATE] = r.nextFloat();
-            behavior[Car.THRESHOLD_BRAKE] = r.nextFloat();
-            behavior[Car.INCREMENT_BRAKE] = -r.nextFloat();
-            cars.get(i).setSteeringBehavior(behavior);
+            randomBehavior(behavior, random);
+            cars[i].setSteeringBehavior(behavior);
         }
     }
 
@@ -60,22 +103,31 @@ public class GeneticAlgorithm {
      * for the maximum run-time of each generation, a new generation will be created. The maximum run-time for each generation is set
      * to prevent cars getting stuck in an endless loop (moving in circles). It should not be set too low, as the algorightm will
      * otherwise disproportionately favor fast, but short-lived cars.
+     * In steady-state mode, there is no such barrier: every car that has crashed or exceeded the maximum run-time is replaced
+     * by a child bred from the pool of recently finished cars right away.
      * @param deltaMillis Time delta since the last update in milliseconds
      */
     public void update(long deltaMillis) {
+        if(steadyState) {
+            updateSteadyState(deltaMillis);
+            return;
+        }
+
         currentGenRunTime += deltaMillis;
 
+        // Cars do not influence each other, so they can be updated in parallel (crashed cars are not moved anymore)
+        updateCars(deltaMillis);
+
         // Check whether any cars are still alive
         boolean stillAlive = false;
-        for(int i = 0; i < cars.size(); i++) {
-            if(cars.get(i).getStatus()) {
-                cars.get(i).update(deltaMillis, level);
+        for(int i = 0; i < cars.length; i++) {
+            if(cars[i].getStatus()) {
                 stillAlive = true;
             }
         }
 
         // Break if this generation is just taking too long
-        if(currentGenRunTime > 15000) {
+        if(currentGenRunTime > MAX_RUNTIME) {
             stillAlive = false;
         }
 
@@ -93,15 +145,151 @@ public class GeneticAlgorithm {
     }
 
     /**
-     * Draws the level and all cars to the screen
+     * Updates all cars in parallel and replaces every car that has finished (crashed or exceeded the maximum run-time) with a
+     * newly bred child, reusing the finished car object. The fitness of a finished car is recorded in the statistics of the current generation and its steering
+     * behavior is added to the pool from which parents are selected. Once all generations have been evaluated, finished cars
+     * are no longer replaced.
+     * @param deltaMillis Time delta since the last update in milliseconds
+     */
+    private void updateSteadyState(long deltaMillis) {
+        updateCars(deltaMillis);
+
+        for(int i = 0; i < cars.length; i++) {
+            Car car = cars[i];
+            if(retired[i] || (car.getStatus() && car.getTimeTraveled() <= MAX_RUNTIME)) {
+                continue;
+            }
+
+            if(currentGeneration >= generations) {
+                retired[i] = true;
+                continue;
+            }
+
+            recordEvaluation(car);
+
+            // Breed a child from the pool; until there are enough finished cars to choose from, start with a random one
+            if(poolSize < 2) {
+                randomBehavior(behavior, random);
+            } else {
+                int parent1 = selectFromPool(random);
+                int parent2 = selectFromPool(random);
+                crossover(poolBehavior[parent1], poolBehavior[parent2], behavior, random);
+                mutate(behavior, random);
+            }
+
+            // The finished car has been recorded, so its slot can be reused for the child
+            placeCar(car);
+            car.setSteeringBehavior(behavior);
+        }
+    }
+
+    /**
+     * Updates all cars that are not retired on the common fork-join pool, one pre-built task per slice of the population
+     * @param deltaMillis Time delta since the last update in milliseconds
+     */
+    private void updateCars(long deltaMillis) {
+        tickDelta = deltaMillis;
+        for(UpdateSlice slice : slices) {
+            slice.reinitialize();
+        }
+        ForkJoinTask.invokeAll(slices);
+    }
+
+    /**
+     * Updates the cars in one slice of the population
+     */
+    private class UpdateSlice extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from, to;
+
+        UpdateSlice(int f, int t) {
+            from = f;
+            to = t;
+        }
+
+        @Override
+        protected void compute() {
+            for(int i = from; i < to; i++) {
+                if(!retired[i]) {
+                    cars[i].update(tickDelta, level);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a finished car to the statistics of the current generation and to the pool of parents. Every time as many cars have
+     * finished as there are in the population, the generation counter advances.
+     * @param car The car that has finished
+     */
+    private void recordEvaluation(Car car) {
+        int dist = car.getDistanceTraveled();
+
+        if(dist > maxDistHistory[currentGeneration]) {
+            maxDistHistory[currentGeneration] = dist;
+        }
+        totalDistHistory[currentGeneration] += dist;
+        totalTimeHistory[currentGeneration] += car.getTimeTraveled();
+
+        // The pool is a ring buffer holding the most recent evaluations
+        System.arraycopy(car.getSteeringBehavior(), 0, poolBehavior[poolNext], 0, Car.NUM_PARAMETERS);
+        poolDist[poolNext] = dist;
+        poolTime[poolNext] = car.getTimeTraveled();
+        poolNext = (poolNext + 1) % poolBehavior.length;
+        poolSize = Math.min(poolSize + 1, poolBehavior.length);
+
+        evaluations++;
+        if(evaluations == cars.length) {
+            evaluations = 0;
+            currentGeneration++;
+        }
+    }
+
+    /**
+     * Runs a tournament over random entries of the pool of finished cars (sampling at least 3)
+     * @param r Random number generator to use
+     * @return Index of the selected entry of the pool
+     */
+    private int selectFromPool(Random r) {
+        int best = r.nextInt(poolSize);
+
+        for(int j = 1; j < Math.max(3, poolSize / 3); j++) {
+            int candidate = r.nextInt(poolSize);
+            if(poolDist[candidate] > poolDist[best]
+                || (poolDist[candidate] == poolDist[best] && poolTime[candidate] > poolTime[best])) {
+                best = candidate;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Copies everything needed for drawing the current state of the algorithm into a snapshot. Must be called from the thread
+     * calling update, so that the snapshot is consistent.
+     * @param snapshot The snapshot to fill (allocates nothing unless the snapshot is too small)
+     */
+    public void writeSnapshot(RenderSnapshot snapshot) {
+        snapshot.reset(cars.length, generations);
+        for(int i = 0; i < cars.length; i++) {
+            snapshot.setCar(i, cars[i]);
+        }
+        snapshot.setHistory(maxDistHistory, totalDistHistory, totalTimeHistory, currentGeneration);
+    }
+
+    /**
+     * Draws the fitness history and all cars to the screen from a snapshot. Only reads the snapshot and immutable fields of
+     * the algorithm, so it is safe to call while another thread runs update.
      * @param g Graphics2D object with which to do the drawing
+     * @param snapshot The snapshot of the algorithm's state to draw
      * @param startX Offset in pixel coordinates
      * @param startY Offset in pixel coordinates
      * @param scaleToX Size of the viewport to draw to in pixels
      * @param scaleToY Size of the viewport to draw to in pixels
      */
-    public void draw(Graphics g, int startX, int startY, int scaleToX, int scaleToY) {
+    public void draw(Graphics g, RenderSnapshot snapshot, int startX, int startY, int scaleToX, int scaleToY) {
         Graphics2D g2d = (Graphics2D) g;
+        int currentGeneration = snapshot.getCurrentGeneration();
 
         // Draw a line chart showing max dist and total dist history
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
@@ -116,8 +304,8 @@ public class GeneticAlgorithm {
         if(currentGeneration > 0) {
             for(int i = 0; i < currentGeneration; i++) {
                 if(i < (currentGeneration - 1)) {
-                    float y1 = (float) maxDistHistory[i] / (float) level.getInnerVertices().length;
-                    float y2 = (float) maxDistHistory[i + 1] / (float) level.getInnerVertices().length;
+                    float y1 = (float) snapshot.getMaxDist(i) / (float) level.getInnerVertices().length;
+                    float y2 = (float) snapshot.getMaxDist(i + 1) / (float) level.getInnerVertices().length;
                     g2d.drawLine(lineStartX + i * (int) (xSpace / generations), lineStartY + (int) (( 1 - y1) * ySpace),
                                 lineStartX + (i + 1) * (int) (xSpace / generations), lineStartY + (int) ((1 - y2) * ySpace));
                 }
@@ -130,14 +318,14 @@ public class GeneticAlgorithm {
         lineStartY = startY + (int) (scaleToY * 2 / 4) + (int) (scaleToY * 2 / 8) + 20 + 20;
         float maxDist = 0;
         for(int i = 0; i < currentGeneration; i++) {
-            if(totalDistHistory[i] > maxDist) maxDist = totalDistHistory[i];
+            if(snapshot.getTotalDist(i) > maxDist) maxDist = snapshot.getTotalDist(i);
         }
 
         if(currentGeneration > 0) {
             for(int i = 0; i < currentGeneration; i++) {
                 if(i < (currentGeneration - 1)) {
-                    float y1 = (float) totalDistHistory[i] / maxDist;
-                    float y2 = (float) totalDistHistory[i + 1] / maxDist;
+                    float y1 = (float) snapshot.getTotalDist(i) / maxDist;
+                    float y2 = (float) snapshot.getTotalDist(i + 1) / maxDist;
                     g2d.drawLine(lineStartX + i * (int) (xSpace / generations), lineStartY + (int) (( 1 - y1) * ySpace),
                                 lineStartX + (i + 1) * (int) (xSpace / generations), lineStartY + (int) ((1 - y2) * ySpace));
                 }
@@ -150,14 +338,14 @@ public class GeneticAlgorithm {
         lineStartY = startY + (int) (scaleToY * 2 / 4) + 2 * (int) (scaleToY * 2 / 8) + 20 + 20 + 20;
         long maxTime = 0;
         for(int i = 0; i < currentGeneration; i++) {
-            if(totalTimeHistory[i] > maxTime) maxTime = totalTimeHistory[i];
+            if(snapshot.getTotalTime(i) > maxTime) maxTime = snapshot.getTotalTime(i);
         }
 
         if(currentGeneration > 0) {
             for(int i = 0; i < currentGeneration; i++) {
                 if(i < (currentGeneration - 1)) {
-                    float y1 = (float) totalTimeHistory[i] / maxTime;
-                    float y2 = (float) totalTimeHistory[i + 1] / maxTime;
+                    float y1 = (float) snapshot.getTotalTime(i) / maxTime;
+                    float y2 = (float) snapshot.getTotalTime(i + 1) / maxTime;
                     g2d.drawLine(lineStartX + i * (int) (xSpace / generations), lineStartY + (int) (( 1 - y1) * ySpace),
                                 lineStartX + (i + 1) * (int) (xSpace / generations), lineStartY + (int) ((1 - y2) * ySpace));
                 }
@@ -165,8 +353,9 @@ public class GeneticAlgorithm {
         }
 
         // Draw all cars
-        for(int i = 0; i < cars.size(); i++) {
-            cars.get(i).draw(g, startX, startY, scaleToX, scaleToY);
+        for(int i = 0; i < snapshot.getCarCount(); i++) {
+            Car.draw(g, snapshot.getCarX(i), snapshot.getCarY(i), snapshot.getCarDirX(i), snapshot.getCarDirY(i),
+                    snapshot.getCarWidth(), snapshot.getCarHeight(), snapshot.getCarColor(i), startX, startY, scaleToX, scaleToY);
         }
     }
 
@@ -174,29 +363,28 @@ public class GeneticAlgorithm {
      * Sets up the next generation of cars by running tournament selection on the current generation. Each new car is generated
      * by crossing over two parent cars. Parent cars are selected based on fitness from a pool of a third of all cars.
      * Crossover is done in 2 blocks: one block for the directional steering and one for acceleration/braking. Mutation is applied
-     * to all genes with strength decreasing over time.
+     * to all genes with strength decreasing over time. The children are bred into the spare car pool, which then becomes the
+     * current population, so no objects are allocated.
      */
     private void nextGeneration() {
-        ArrayList<Car> nextCars = new ArrayList<Car>();
-        Random r = new Random();
+        Random r = random;
 
         // Calculate maximum and total fitness
         maxDistHistory[currentGeneration] = totalDistHistory[currentGeneration] = totalTimeHistory[currentGeneration] = 0;
-        for(int i = 0; i < cars.size(); i++) {
-            if(cars.get(i).getDistanceTraveled() > maxDistHistory[currentGeneration]) {
-                maxDistHistory[currentGeneration] = cars.get(i).getDistanceTraveled();
+        for(int i = 0; i < cars.length; i++) {
+            if(cars[i].getDistanceTraveled() > maxDistHistory[currentGeneration]) {
+                maxDistHistory[currentGeneration] = cars[i].getDistanceTraveled();
             }
-            totalDistHistory[currentGeneration] += cars.get(i).getDistanceTraveled();
-            totalTimeHistory[currentGeneration] += cars.get(i).getTimeTraveled();
+            totalDistHistory[currentGeneration] += cars[i].getDistanceTraveled();
+            totalTimeHistory[currentGeneration] += cars[i].getTimeTraveled();
         }
 
         // Generate a new generation of cars
-        float[] behavior = new float[Car.NUM_PARAMETERS];
-        for(int i = 0; i < cars.size(); i++) {
+        for(int i = 0; i < cars.length; i++) {
             // Use tournament selection to select parent cars (sample at least 3)
-            Collections.shuffle(cars);
+            shuffle(cars, r);
             int parent1 = 0, parent2 = 1;
-            for(int j = 2; j < Math.max(3, (int) (cars.size() / 3)); j++) {
+            for(int j = 2; j < Math.max(3, (int) (cars.length / 3)); j++) {
                 int selection = selectParent(parent1, j);
                 if(selection == parent1) {
                     parent2 = selectParent(parent2, j);
@@ -206,37 +394,86 @@ public class GeneticAlgorithm {
             }
 
             // Create a new child car and use cross-over by parameter pair to generate its steering behavior
-            nextCars.add(generateNewCar());
-            if(r.nextFloat() < 0.5f) {
-                behavior[Car.THRESHOLD_CHANGEDIR] = cars.get(parent1).getSteeringBehavior()[Car.THRESHOLD_CHANGEDIR];
-                behavior[Car.ANGLE_CHANGEDIR] = cars.get(parent1).getSteeringBehavior()[Car.ANGLE_CHANGEDIR];
-            } else {
-                behavior[Car.THRESHOLD_CHANGEDIR] = cars.get(parent2).getSteeringBehavior()[Car.THRESHOLD_CHANGEDIR];
-                behavior[Car.ANGLE_CHANGEDIR] = cars.get(parent2).getSteeringBehavior()[Car.ANGLE_CHANGEDIR];
-            }
+            placeCar(spareCars[i]);
+            crossover(cars[parent1].getSteeringBehavior(), cars[parent2].getSteeringBehavior(), behavior, r);
+            mutate(behavior, r);
 
-            if(r.nextFloat() < 0.5f) {
-                behavior[Car.THRESHOLD_ACCELERATE] = cars.get(parent1).getSteeringBehavior()[Car.THRESHOLD_ACCELERATE];
-                behavior[Car.INCREMENT_ACCELERATE] = cars.get(parent1).getSteeringBehavior()[Car.INCREMENT_ACCELERATE];
-                behavior[Car.THRESHOLD_BRAKE] = cars.get(parent1).getSteeringBehavior()[Car.THRESHOLD_BRAKE];
-                behavior[Car.INCREMENT_BRAKE] = cars.get(parent1).getSteeringBehavior()[Car.INCREMENT_BRAKE];
-            } else {
-                behavior[Car.THRESHOLD_ACCELERATE] = cars.get(parent2).getSteeringBehavior()[Car.THRESHOLD_ACCELERATE];
-                behavior[Car.INCREMENT_ACCELERATE] = cars.get(parent2).getSteeringBehavior()[Car.INCREMENT_ACCELERATE];
-                behavior[Car.THRESHOLD_BRAKE] = cars.get(parent2).getSteeringBehavior()[Car.THRESHOLD_BRAKE];
-                behavior[Car.INCREMENT_BRAKE] = cars.get(parent2).getSteeringBehavior()[Car.INCREMENT_BRAKE];
-            }
+            spareCars[i].setSteeringBehavior(behavior);
+        }
 
-            // Add mutation with a decreasing impact and 50:50 chance of occurrence
-            for(int j = 0; j < behavior.length; j++) {
-                float mutationFactor = r.nextFloat() > 0.5 ? 1.0f / (currentGeneration + 1) : 0;
-                behavior[j] += mutationFactor * (-0.5f + r.nextFloat());
-            }
+        Car[] previousCars = cars;
+        cars = spareCars;
+        spareCars = previousCars;
+    }
 
-            nextCars.get(i).setSteeringBehavior(behavior);
+    /**
+     * Shuffles an array of cars in place (Fisher-Yates)
+     * @param a The cars to shuffle
+     * @param r Random number generator to use
+     */
+    private static void shuffle(Car[] a, Random r) {
+        for(int i = a.length - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1);
+            Car temp = a[i];
+            a[i] = a[j];
+            a[j] = temp;
         }
+    }
+
+    /**
+     * Fills a steering behavior with completely random values
+     * @param behavior Array of size Car.NUM_PARAMETERS to fill
+     * @param r Random number generator to use
+     */
+    private void randomBehavior(float[] behavior, Random r) {
+        behavior[Car.THRESHOLD_CHANGEDIR] = r.nextFloat();
+        behavior[Car.ANGLE_CHANGEDIR] = r.nextFloat();
+        behavior[Car.THRESHOLD_ACCELERATE] = r.nextFloat();
+        behavior[Car.INCREMENT_ACCELERATE] = r.nextFloat();
+        behavior[Car.THRESHOLD_BRAKE] = r.nextFloat();
+        behavior[Car.INCREMENT_BRAKE] = -r.nextFloat();
+    }
 
-        cars = nextCars;
+    /**
+     * Crosses over the steering behavior of two parents in 2 blocks: one block for the directional steering and one for
+     * acceleration/braking
+     * @param parent1 Steering behavior of the first parent
+     * @param parent2 Steering behavior of the second parent
+     * @param behavior Array of size Car.NUM_PARAMETERS receiving the child's steering behavior
+     * @param r Random number generator to use
+     */
+    private void crossover(float[] parent1, float[] parent2, float[] behavior, Random r) {
+        if(r.nextFloat() < 0.5f) {
+            behavior[Car.THRESHOLD_CHANGEDIR] = parent1[Car.THRESHOLD_CHANGEDIR];
+            behavior[Car.ANGLE_CHANGEDIR] = parent1[Car.ANGLE_CHANGEDIR];
+        } else {
+            behavior[Car.THRESHOLD_CHANGEDIR] = parent2[Car.THRESHOLD_CHANGEDIR];
+            behavior[Car.ANGLE_CHANGEDIR] = parent2[Car.ANGLE_CHANGEDIR];
+        }
+
+        if(r.nextFloat() < 0.5f) {
+            behavior[Car.THRESHOLD_ACCELERATE] = parent1[Car.THRESHOLD_ACCELERATE];
+            behavior[Car.INCREMENT_ACCELERATE] = parent1[Car.INCREMENT_ACCELERATE];
+            behavior[Car.THRESHOLD_BRAKE] = parent1[Car.THRESHOLD_BRAKE];
+            behavior[Car.INCREMENT_BRAKE] = parent1[Car.INCREMENT_BRAKE];
+        } else {
+            behavior[Car.THRESHOLD_ACCELERATE] = parent2[Car.THRESHOLD_ACCELERATE];
+            behavior[Car.INCREMENT_ACCELERATE] = parent2[Car.INCREMENT_ACCELERATE];
+            behavior[Car.THRESHOLD_BRAKE] = parent2[Car.THRESHOLD_BRAKE];
+            behavior[Car.INCREMENT_BRAKE] = parent2[Car.INCREMENT_BRAKE];
+        }
+    }
+
+    /**
+     * Adds mutation with a decreasing impact and 50:50 chance of occurrence to all genes
+     * @param behavior Steering behavior to mutate
+     * @param r Random number generator to use
+     */
+    private void mutate(float[] behavior, Random r) {
+        for(int j = 0; j < behavior.length; j++) {
+            float mutationFactor = r.nextFloat() > 0.5 ? 1.0f / (currentGeneration + 1) : 0;
+            behavior[j] += mutationFactor * (-0.5f + r.nextFloat());
+        }
     }
 
     /**
@@ -246,11 +483,11 @@ public class GeneticAlgorithm {
      * @return Index of the selected car in the private cars array
      */
     private int selectParent(int candidate1, int candidate2) {
-        if(cars.get(candidate1).getDistanceTraveled() > cars.get(candidate2).getDistanceTraveled()) {
+        if(cars[candidate1].getDistanceTraveled() > cars[candidate2].getDistanceTraveled()) {
             return candidate1;
-        } else if(cars.get(candidate2).getDistanceTraveled() > cars.get(candidate1).getDistanceTraveled()) {
+        } else if(cars[candidate2].getDistanceTraveled() > cars[candidate1].getDistanceTraveled()) {
             return candidate2;
-        } else if(cars.get(candidate1).getTimeTraveled() > cars.get(candidate2).getTimeTraveled()) {
+        } else if(cars[candidate1].getTimeTraveled() > cars[candidate2].getTimeTraveled()) {
             return candidate1;
         } else {
             return candidate2;
@@ -258,12 +495,12 @@ public class GeneticAlgorithm {
     }
 
     /**
-     * Generates a car with random (but valid) starting values
-     * @return The generated car object
+     * Resets a car to random (but valid) starting values
+     * @param car The car to reset
      */
-    private Car generateNewCar() {
+    private void placeCar(Car car) {
         // Generate a random valid position in the level
-        Random r = new Random();
+        Random r = random;
 
         int vertex = r.nextInt(level.getInnerVertices().length);
         float x = level.getInnerVertices()[vertex][0];
@@ -281,6 +518,6 @@ public class GeneticAlgorithm {
             y -= 0.5f * CARHEIGHT + r.nextFloat() * (trackWidth - 1.5f * CARHEIGHT);
         }
         
-        return new Car(x, y, r.nextFloat(), r.nextFloat(), r.nextFloat() * 0.1f, CARWIDTH, CARHEIGHT);
+        car.reset(x, y, r.nextFloat(), r.nextFloat(), r.nextFloat() * 0.1f);
     }
 }
@@ -14,6 +14,9 @@ public class Level {
     // THe size of the level in a (-1, 1) coordinate system, measuring the inner circle (!)
     private float minX, maxX, minY, maxY;
 
+    // Optional precomputed distance field used to speed up collision and perception queries
+    private DistanceField distanceField;
+
     /**
      * Creates a Level object using the supplied parameters
      * @param numPoints The number of points to distribute on a unit circle to form the level polygon
@@ -21,6 +24,21 @@ public class Level {
      * @param trackWidth The scaling factor by which to make the outer edge of the level larger than the inner (determining how wide the track is); typical values between 0.05f and 0.2f
      */
     public Level(int numPoints, float variability, float trackWidth) {
+        this(numPoints, variability, trackWidth, new Random());
+    }
+
+    /**
+     * Creates a reproducible Level object using the supplied parameters; the same seed always results in the same level
+     * @param numPoints The number of points to distribute on a unit circle to form the level polygon
+     * @param variability How much to randomly shift each individual point by to make the level less regular (use small values like 0.05F)
+     * @param trackWidth The scaling factor by which to make the outer edge of the level larger than the inner (determining how wide the track is); typical values between 0.05f and 0.2f
+     * @param seed Seed for the random number generator used to "jiggle" the points
+     */
+    public Level(int numPoints, float variability, float trackWidth, long seed) {
+        this(numPoints, variability, trackWidth, new Random(seed));
+    }
+
+    private Level(int numPoints, float variability, float trackWidth, Random r) {
         minX = maxX = minY = maxY = 0.0f;
         
         if(numPoints < 3) {
@@ -33,7 +51,6 @@ public class Level {
         points[0][1] = 0;
 
         // Points are placed on a unit circle (shifted by one to make all coordinates positive) and then "jiggled" based on the variability parameter
-        Random r = new Random();
         for(int i = 0; i < numPoints; i++) {
             // Place points on unit circle
             points[i][0] = (float) Math.cos(2 * i * Math.PI / numPoints);
@@ -115,6 +132,23 @@ public class Level {
         g2d.dispose();
     }
 
+    /**
+     * Precomputes a signed distance field for this level. Once built, cars use it for collision, perception and distance
+     * measurement, making the cost of each update independent of the number of vertices of the level.
+     * @param resolution Number of raster cells along the longer side of the level (e.g. 512)
+     */
+    public void buildDistanceField(int resolution) {
+        distanceField = new DistanceField(this, resolution);
+    }
+
+    /**
+     * Returns the precomputed distance field of this level
+     * @return The distance field, or null if none has been built
+     */
+    public DistanceField getDistanceField() {
+        return distanceField;
+    }
+
     public float getMinX() {
         return minX;
     }
@@ -0,0 +1,112 @@
+import java.awt.Color;
+
+public class RenderSnapshot {
+    // Per-car state needed for drawing, indexed by car
+    private float[] carX, carY, carDirX, carDirY;
+    private Color[] carColor;
+    private int carCount;
+    private float carWidth, carHeight;
+
+    // Fitness history up to (excluding) the current generation
+    private int[] maxDistHistory, totalDistHistory, totalTimeHistory;
+    private int currentGeneration;
+
+    /**
+     * Creates an empty snapshot; storage is allocated on the first write and only reallocated if the population grows
+     */
+    public RenderSnapshot() {
+        carX = carY = carDirX = carDirY = new float[0];
+        carColor = new Color[0];
+        maxDistHistory = totalDistHistory = totalTimeHistory = new int[0];
+    }
+
+    /**
+     * Prepares the snapshot to receive the given number of cars and generations of history. Only ever called by the
+     * simulation thread while it owns this snapshot.
+     * @param numCars Number of cars that will be written
+     * @param numGenerations Number of generations of history that will be written
+     */
+    void reset(int numCars, int numGenerations) {
+        if(carX.length < numCars) {
+            carX = new float[numCars];
+            carY = new float[numCars];
+            carDirX = new float[numCars];
+            carDirY = new float[numCars];
+            carColor = new Color[numCars];
+        }
+
+        if(maxDistHistory.length < numGenerations) {
+            maxDistHistory = new int[numGenerations];
+            totalDistHistory = new int[numGenerations];
+            totalTimeHistory = new int[numGenerations];
+        }
+
+        carCount = numCars;
+        currentGeneration = 0;
+    }
+
+    void setCar(int index, Car car) {
+        carX[index] = car.getX();
+        carY[index] = car.getY();
+        carDirX[index] = car.getDirX();
+        carDirY[index] = car.getDirY();
+        carColor[index] = car.getColor();
+        carWidth = car.getWidth();
+        carHeight = car.getHeight();
+    }
+
+    void setHistory(int[] maxDist, int[] totalDist, int[] totalTime, int generation) {
+        System.arraycopy(maxDist, 0, maxDistHistory, 0, generation);
+        System.arraycopy(totalDist, 0, totalDistHistory, 0, generation);
+        System.arraycopy(totalTime, 0, totalTimeHistory, 0, generation);
+        currentGeneration = generation;
+    }
+
+    public int getCarCount() {
+        return carCount;
+    }
+
+    public float getCarX(int index) {
+        return carX[index];
+    }
+
+    public float getCarY(int index) {
+        return carY[index];
+    }
+
+    public float getCarDirX(int index) {
+        return carDirX[index];
+    }
+
+    public float getCarDirY(int index) {
+        return carDirY[index];
+    }
+
+    public Color getCarColor(int index) {
+        return carColor[index];
+    }
+
+    public float getCarWidth() {
+        return carWidth;
+    }
+
+    public float getCarHeight() {
+        return carHeight;
+    }
+
+    public int getCurrentGeneration() {
+        return currentGeneration;
+    }
+
+    public int getMaxDist(int generation) {
+        return maxDistHistory[generation];
+    }
+
+    public int getTotalDist(int generation) {
+        return totalDistHistory[generation];
+    }
+
+    public int getTotalTime(int generation) {
+        return totalTimeHistory[generation];
+    }
+}
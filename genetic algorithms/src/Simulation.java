@@ -1,6 +1,8 @@
 import java.awt.EventQueue;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.util.Arrays;
+import java.util.List;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
@@ -8,25 +10,38 @@ class Surface extends JPanel implements Runnable {
     public static final float MARGIN = 0.2f;
     public static final float CARWIDTH = 0.035f, CARHEIGHT = 0.065f;
     public static final float TRACKWIDTH = 0.125f;
+    public static final int DISTANCE_FIELD_RESOLUTION = 256;
     private Level level;
     private GeneticAlgorithm ga;
+    private SnapshotBuffer snapshots;
     private int lastWidth, lastHeight;
     private Thread animator;
-    private Boolean running;
+    private volatile boolean running;
+    private volatile boolean fastForward;
     
-    public Surface() {
-        // Don't make the level too fine (i.e., too many vertices) because otherwise measuring the distance travelled
-        // will become difficult (this is counting the line segments a car has passed and at sufficient speed the car
-        // would end up skipping individual lines altogether, never reaching 100%)
+    /**
+     * Creates the drawing surface and starts the simulation
+     * @param steadyState True to run the genetic algorithm in steady-state mode (no generation barriers)
+     * @param distanceField True to test collisions and cast sensor rays against a precomputed distance field instead of the
+     *                      exact level geometry (faster, but only accurate to about half a raster cell)
+     */
+    public Surface(boolean steadyState, boolean distanceField) {
+        // Cars sweep their path against the level each update and count every line segment they pass, so fine levels
+        // and large time steps no longer cause skipped segments (the vertex count only affects the cost per update)
         level = new Level(75, 0.02f, TRACKWIDTH);
-        ga = new GeneticAlgorithm(50, 24, level, TRACKWIDTH);
+        if(distanceField) {
+            level.buildDistanceField(DISTANCE_FIELD_RESOLUTION);
+        }
+        ga = new GeneticAlgorithm(50, 24, level, TRACKWIDTH, steadyState);
+        snapshots = new SnapshotBuffer();
         lastWidth = lastHeight = 0;
 
         start();
     }
     
     /**
-     * Draws the whole simulation to the screen, dynamically rescaling to the window size
+     * Draws the whole simulation to the screen, dynamically rescaling to the window size. Cars and statistics are drawn from the
+     * latest snapshot published by the simulation thread, so the state never changes while a frame is being drawn.
      * @param g Graphics2D object to do the drawing with
      */
     private void draw(Graphics g) {
@@ -42,7 +57,7 @@ class Surface extends JPanel implements Runnable {
         int offsetY = (int) ((getHeight() * MARGIN) / 2);
 
         level.draw(g, offsetX, offsetY);
-        ga.draw(g, offsetX, offsetY, (int) (lastWidth * (1 - MARGIN) / 2), (int) (lastHeight * (1 - MARGIN) / 2));
+        ga.draw(g, snapshots.getLatest(), offsetX, offsetY, (int) (lastWidth * (1 - MARGIN) / 2), (int) (lastHeight * (1 - MARGIN) / 2));
     }
 
     @Override
@@ -52,15 +67,24 @@ class Surface extends JPanel implements Runnable {
     }
 
     public void start() {
+        running = true;
         animator = new Thread(this);
         animator.start();
-        running = true;
     }
 
     public void stop() {
         running = false;
     }
 
+    /**
+     * In fast forward mode, the simulation advances in fixed steps as fast as possible instead of in real time. The display
+     * keeps sampling the latest snapshot at its own pace.
+     * @param fast True to run the simulation at full speed, false to run it in real time
+     */
+    public void setFastForward(boolean fast) {
+        fastForward = fast;
+    }
+
     @Override
     public void run() {
         long beforeTime, timeDiff;
@@ -70,8 +94,10 @@ class Surface extends JPanel implements Runnable {
         while(running) {
             timeDiff = System.currentTimeMillis() - beforeTime;
 
-            // Ensure max frame rate of 60 FPS
-            if(timeDiff < 1000 / 60) {
+            if(fastForward) {
+                timeDiff = 1000 / 60;
+            } else if(timeDiff < 1000 / 60) {
+                // Ensure max frame rate of 60 FPS
                 try {
                     Thread.sleep(1000 / 60 - timeDiff);
                     timeDiff = 1000 / 60;
@@ -81,6 +107,10 @@ class Surface extends JPanel implements Runnable {
             }
 
             ga.update(timeDiff);
+
+            // Hand a consistent copy of the new state over to the drawing thread
+            ga.writeSnapshot(snapshots.getBackBuffer());
+            snapshots.publish();
             repaint();
 
             beforeTime = System.currentTimeMillis();
@@ -91,12 +121,13 @@ class Surface extends JPanel implements Runnable {
 public class Simulation extends JFrame {
     private Surface surface;
 
-    public Simulation() {
-        initUI();
+    public Simulation(boolean fastForward, boolean steadyState, boolean distanceField) {
+        initUI(fastForward, steadyState, distanceField);
     }
 
-    private void initUI() {
-        surface = new Surface();
+    private void initUI(boolean fastForward, boolean steadyState, boolean distanceField) {
+        surface = new Surface(steadyState, distanceField);
+        surface.setFastForward(fastForward);
         add(surface);
 
         setTitle("Self-driving car simulation");
@@ -105,11 +136,12 @@ public class Simulation extends JFrame {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
     }
     
-    public static void main(String[] args) {
+    public static void main(final String[] args) {
         EventQueue.invokeLater(new Runnable() {
             @Override
             public void run() {
-                Simulation s = new Simulation();
+                List<String> options = Arrays.asList(args);
+                Simulation s = new Simulation(options.contains("--fast"), options.contains("--steady"), options.contains("--field"));
                 s.setVisible(true);
             }
         });
@@ -0,0 +1,54 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SnapshotBuffer {
+    // Set on the shared index if the shared buffer holds a snapshot the reader has not picked up yet
+    private static final int FRESH = 4;
+    private static final int INDEX_MASK = 3;
+
+    private final RenderSnapshot[] buffers;
+
+    // The buffer currently being written (owned by the simulation thread) and the one currently being read (owned by
+    // the drawing thread); the third buffer is the one handed over between them
+    private int back, front;
+    private final AtomicInteger shared;
+
+    /**
+     * Creates a lock-free triple buffer for handing snapshots from one writing thread to one reading thread. The writer
+     * never waits for the reader and the reader always sees the latest complete snapshot, which stays unchanged for as
+     * long as it holds on to it.
+     */
+    public SnapshotBuffer() {
+        buffers = new RenderSnapshot[] {new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot()};
+        back = 0;
+        shared = new AtomicInteger(1);
+        front = 2;
+    }
+
+    /**
+     * Returns the snapshot to fill next; only to be called by the writing thread
+     * @return The back buffer
+     */
+    public RenderSnapshot getBackBuffer() {
+        return buffers[back];
+    }
+
+    /**
+     * Publishes the back buffer as the latest snapshot and takes over the previously shared buffer for the next write
+     */
+    public void publish() {
+        back = shared.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Returns the latest published snapshot; only to be called by the reading thread. The returned snapshot will not be
+     * modified until the next call of this method.
+     * @return The most recent complete snapshot (empty if nothing has been published yet)
+     */
+    public RenderSnapshot getLatest() {
+        if((shared.get() & FRESH) != 0) {
+            front = shared.getAndSet(front) & INDEX_MASK;
+        }
+
+        return buffers[front];
+    }
+}
@@ -0,0 +1,269 @@
+import java.lang.Math;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class TrackGenerator {
+    private int numPoints;
+    private float variability;
+    private float trackWidth;
+    private int maxAttempts;
+
+    /**
+     * A generated level that has passed validation, tagged with metrics describing how difficult it is to drive
+     */
+    public static class Track {
+        private Level level;
+        private long seed;
+        private float meanCurvature, maxCurvature, minWidth;
+
+        private Track(Level l, long s) {
+            level = l;
+            seed = s;
+        }
+
+        public Level getLevel() {
+            return level;
+        }
+
+        /**
+         * @return The seed with which the level can be recreated via new Level(numPoints, variability, trackWidth, seed)
+         */
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * @return Mean absolute turning angle between consecutive inner line segments in radians
+         */
+        public float getMeanCurvature() {
+            return meanCurvature;
+        }
+
+        /**
+         * @return Largest absolute turning angle between consecutive inner line segments in radians
+         */
+        public float getMaxCurvature() {
+            return maxCurvature;
+        }
+
+        /**
+         * @return Narrowest distance between the inner and the outer edge in units
+         */
+        public float getMinWidth() {
+            return minWidth;
+        }
+
+        /**
+         * @return Difficulty of the track: the sharpest turn divided by the narrowest width, so tight turns on narrow tracks score highest
+         */
+        public float getDifficulty() {
+            return maxCurvature / minWidth;
+        }
+    }
+
+    /**
+     * Sets up a generator for levels with the given parameters (see the Level constructor)
+     * @param points The number of points per level polygon
+     * @param var How much to randomly shift each individual point by
+     * @param width The scaling factor by which the outer edge is larger than the inner edge
+     * @param attempts How many seeds to try per track before giving up on it (invalid levels are discarded)
+     */
+    public TrackGenerator(int points, float var, float width, int attempts) {
+        numPoints = points;
+        variability = var;
+        trackWidth = width;
+        maxAttempts = attempts;
+    }
+
+    /**
+     * Generates validated tracks in parallel. Track i tries the seeds baseSeed + i * maxAttempts + attempt one after another
+     * until one yields a valid level, so the result only depends on the arguments and not on the number of threads.
+     * @param count Number of tracks to generate
+     * @param baseSeed Seed from which the seeds of the individual tracks are derived
+     * @return The valid tracks sorted by increasing difficulty (may contain fewer than count tracks if attempts ran out)
+     */
+    public List<Track> generate(int count, long baseSeed) {
+        List<Track> tracks = IntStream.range(0, count).parallel()
+            .mapToObj(i -> generateTrack(baseSeed + (long) i * maxAttempts))
+            .filter(t -> t != null)
+            .collect(Collectors.toList());
+
+        Collections.sort(tracks, Comparator.comparingDouble(Track::getDifficulty));
+        return tracks;
+    }
+
+    private Track generateTrack(long firstSeed) {
+        for(int attempt = 0; attempt < maxAttempts; attempt++) {
+            long seed = firstSeed + attempt;
+            Level l = new Level(numPoints, variability, trackWidth, seed);
+
+            if(isValid(l)) {
+                Track t = new Track(l, seed);
+                measureCurvature(t);
+                t.minWidth = minWidth(l);
+                return t;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Tests whether a level is drivable: neither edge may intersect itself and the edges may not cross each other
+     * @param l The level to test
+     * @return True if no two (non-adjacent) line segments of the level intersect
+     */
+    public static boolean isValid(Level l) {
+        return !hasIntersection(l.getInnerVertices(), l.getOuterVertices());
+    }
+
+    /**
+     * Sweep-line test for intersections between the line segments of two closed polygons. Segments are sorted by their
+     * smallest x coordinate; a vertical line then sweeps from left to right, keeping only those segments active that it
+     * currently touches. Each new segment is only tested against the active ones.
+     * @param inner Vertices of the first polygon
+     * @param outer Vertices of the second polygon
+     * @return True if any two segments intersect (segments sharing a vertex within the same polygon are not counted)
+     */
+    private static boolean hasIntersection(float[][] inner, float[][] outer) {
+        int n = inner.length + outer.length;
+
+        // Segment s starts at vertex s of the inner polygon, or at vertex s - inner.length of the outer polygon
+        float[][] segments = new float[n][];
+        for(int i = 0; i < inner.length; i++) {
+            segments[i] = segment(inner, i);
+        }
+        for(int i = 0; i < outer.length; i++) {
+            segments[inner.length + i] = segment(outer, i);
+        }
+
+        Integer[] order = new Integer[n];
+        for(int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> Math.min(segments[i][0], segments[i][2])));
+
+        ArrayList<Integer> active = new ArrayList<Integer>();
+        for(int k = 0; k < n; k++) {
+            int s = order[k];
+            float sweepX = Math.min(segments[s][0], segments[s][2]);
+
+            // Drop segments that lie completely left of the sweep line
+            for(int a = active.size() - 1; a >= 0; a--) {
+                float[] other = segments[active.get(a)];
+                if(Math.max(other[0], other[2]) < sweepX) {
+                    active.remove(a);
+                }
+            }
+
+            for(int a = 0; a < active.size(); a++) {
+                int other = active.get(a);
+                if(!adjacent(s, other, inner.length, outer.length) && intersects(segments[s], segments[other])) {
+                    return true;
+                }
+            }
+
+            active.add(s);
+        }
+
+        return false;
+    }
+
+    private static float[] segment(float[][] vertices, int index) {
+        float[] next = vertices[(index + 1) % vertices.length];
+        return new float[] {vertices[index][0], vertices[index][1], next[0], next[1]};
+    }
+
+    private static boolean adjacent(int s1, int s2, int innerCount, int outerCount) {
+        if((s1 < innerCount) != (s2 < innerCount)) {
+            return false;
+        }
+
+        int count = s1 < innerCount ? innerCount : outerCount;
+        int diff = Math.abs(s1 - s2);
+        return diff == 1 || diff == count - 1;
+    }
+
+    /**
+     * Tests whether two line segments (x1, y1, x2, y2) intersect, including touching and collinear overlap
+     */
+    private static boolean intersects(float[] a, float[] b) {
+        float d1 = orientation(b[0], b[1], b[2], b[3], a[0], a[1]);
+        float d2 = orientation(b[0], b[1], b[2], b[3], a[2], a[3]);
+        float d3 = orientation(a[0], a[1], a[2], a[3], b[0], b[1]);
+        float d4 = orientation(a[0], a[1], a[2], a[3], b[2], b[3]);
+
+        if(((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+            return true;
+        }
+
+        return (d1 == 0 && onSegment(b, a[0], a[1])) || (d2 == 0 && onSegment(b, a[2], a[3]))
+            || (d3 == 0 && onSegment(a, b[0], b[1])) || (d4 == 0 && onSegment(a, b[2], b[3]));
+    }
+
+    private static float orientation(float x1, float y1, float x2, float y2, float px, float py) {
+        return (x2 - x1) * (py - y1) - (y2 - y1) * (px - x1);
+    }
+
+    private static boolean onSegment(float[] s, float px, float py) {
+        return px >= Math.min(s[0], s[2]) && px <= Math.max(s[0], s[2]) && py >= Math.min(s[1], s[3]) && py <= Math.max(s[1], s[3]);
+    }
+
+    /**
+     * Measures the turning angle at every vertex of the inner edge
+     * @param t The track to measure; its curvature metrics are filled in
+     */
+    private static void measureCurvature(Track t) {
+        float[][] v = t.level.getInnerVertices();
+        float sum = 0, max = 0;
+
+        for(int i = 0; i < v.length; i++) {
+            float[] prev = v[(i + v.length - 1) % v.length];
+            float[] next = v[(i + 1) % v.length];
+
+            float inX = v[i][0] - prev[0], inY = v[i][1] - prev[1];
+            float outX = next[0] - v[i][0], outY = next[1] - v[i][1];
+            float angle = (float) Math.abs(Math.atan2(inX * outY - inY * outX, inX * outX + inY * outY));
+
+            sum += angle;
+            max = Math.max(max, angle);
+        }
+
+        t.meanCurvature = sum / v.length;
+        t.maxCurvature = max;
+    }
+
+    /**
+     * Measures the narrowest point of the track as the smallest distance from any vertex of one edge to the other edge
+     * @param l The level to measure
+     * @return The minimum track width in units
+     */
+    private static float minWidth(Level l) {
+        return Math.min(minDistance(l.getInnerVertices(), l.getOuterVertices()),
+                        minDistance(l.getOuterVertices(), l.getInnerVertices()));
+    }
+
+    private static float minDistance(float[][] from, float[][] to) {
+        float shortest = 9999.0f;
+
+        for(int i = 0; i < from.length; i++) {
+            for(int j = 0; j < to.length; j++) {
+                float[] s = segment(to, j);
+                float len_sq = (s[2] - s[0]) * (s[2] - s[0]) + (s[3] - s[1]) * (s[3] - s[1]);
+                float t = ((from[i][0] - s[0]) * (s[2] - s[0]) + (from[i][1] - s[1]) * (s[3] - s[1])) / len_sq;
+                t = Math.max(0, Math.min(1, t));
+                float dx = from[i][0] - (s[0] + t * (s[2] - s[0]));
+                float dy = from[i][1] - (s[1] + t * (s[3] - s[1]));
+
+                shortest = Math.min(shortest, (float) Math.sqrt(dx * dx + dy * dy));
+            }
+        }
+
+        return shortest;
+    }
+}
@@ -0,0 +1,191 @@
+package playground;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+
+//Loads images by name from an asset directory (-Dplayground.assets=...) or from playground/res on the classpath.
+//Images are decoded in parallel in the background and the decoded pixels are cached in a binary file
+//(-Dplayground.cache=..., by default in the temp directory), so later launches skip PNG decoding
+public class Assets {
+	public static class Image {
+		public final int width, height;
+		public final int[] pixels;
+
+		public Image(int w, int h, int[] p) {
+			width = w;
+			height = h;
+			pixels = p;
+		}
+	}
+
+	private static final int CACHE_MAGIC = 0x50474153;
+	private static final String CLASSPATH_ROOT = "/playground/res/";
+
+	private Path assetDirectory, cacheDirectory;
+	private ExecutorService loader;
+	private ConcurrentHashMap<String, Future<Image>> images;
+
+	public Assets(Path assetDir, Path cacheDir) {
+		assetDirectory = assetDir;
+		cacheDirectory = cacheDir;
+		images = new ConcurrentHashMap<String, Future<Image>>();
+		loader = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+			Thread t = new Thread(r, "Assets");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	public static Assets fromSystemProperties() {
+		String assets = System.getProperty("playground.assets");
+		String cache = System.getProperty("playground.cache", Paths.get(System.getProperty("java.io.tmpdir"), "playground-assets").toString());
+
+		return new Assets(assets == null ? null : Paths.get(assets), cache.isEmpty() ? null : Paths.get(cache));
+	}
+
+	//Starts loading an image in the background (only once per name)
+	public Future<Image> load(String name) {
+		return images.computeIfAbsent(name, n -> loader.submit(() -> read(n)));
+	}
+
+	//Waits for an image, starting to load it if that has not happened yet
+	public Image get(String name) {
+		try {
+			return load(name).get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading " + name, e);
+		} catch(ExecutionException e) {
+			throw new IllegalStateException("Could not load asset " + name, e.getCause());
+		}
+	}
+
+	//Directory for cached data (may be null if caching is turned off)
+	public Path getCacheDirectory() {
+		return cacheDirectory;
+	}
+	
+	public void shutdown() {
+		loader.shutdown();
+	}
+
+	private Image read(String name) throws IOException {
+		Path file = assetDirectory == null ? null : assetDirectory.resolve(name);
+		URL resource = null;
+		long stamp;
+
+		//The stamp identifies the version of the source file, so a stale cache entry is never used
+		if(file != null && Files.isRegularFile(file)) {
+			stamp = Files.getLastModifiedTime(file).toMillis() * 31 + Files.size(file);
+		} else {
+			resource = Assets.class.getResource(CLASSPATH_ROOT + name);
+			if(resource == null)
+				throw new IOException("Asset not found: " + name);
+			URLConnection connection = resource.openConnection();
+			stamp = connection.getLastModified() * 31 + connection.getContentLengthLong();
+			connection.getInputStream().close();
+		}
+		stamp = stamp * 31 + name.hashCode();
+
+		Image image = readCache(name, stamp);
+		if(image != null)
+			return image;
+
+		BufferedImage decoded;
+		if(resource == null) {
+			decoded = ImageIO.read(file.toFile());
+		} else {
+			try(InputStream in = resource.openStream()) {
+				decoded = ImageIO.read(in);
+			}
+		}
+		if(decoded == null)
+			throw new IOException("Not a readable image: " + name);
+
+		int w = decoded.getWidth();
+		int h = decoded.getHeight();
+		int[] pixels = new int[w * h];
+		decoded.getRGB(0, 0, w, h, pixels, 0, w);
+		image = new Image(w, h, pixels);
+
+		writeCache(name, stamp, image);
+		return image;
+	}
+
+	private Path cacheFile(String name) {
+		return cacheDirectory.resolve(name.replaceAll("[^A-Za-z0-9._-]", "_") + ".bin");
+	}
+
+	private Image readCache(String name, long stamp) {
+		if(cacheDirectory == null)
+			return null;
+
+		Path file = cacheFile(name);
+		if(!Files.isRegularFile(file))
+			return null;
+
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(20);
+			while(header.hasRemaining() && channel.read(header) >= 0);
+			header.flip();
+			if(header.remaining() < 20 || header.getInt() != CACHE_MAGIC || header.getLong() != stamp)
+				return null;
+
+			int w = header.getInt();
+			int h = header.getInt();
+			ByteBuffer body = ByteBuffer.allocateDirect(w * h * 4);
+			while(body.hasRemaining() && channel.read(body) >= 0);
+			if(body.hasRemaining())
+				return null;
+			body.flip();
+
+			int[] pixels = new int[w * h];
+			body.asIntBuffer().get(pixels);
+			return new Image(w, h, pixels);
+		} catch(IOException e) {
+			//A broken cache entry just means decoding the image again
+			return null;
+		}
+	}
+
+	private void writeCache(String name, long stamp, Image image) {
+		if(cacheDirectory == null)
+			return;
+
+		try {
+			Files.createDirectories(cacheDirectory);
+
+			//Write to a temporary file first, so other processes never see half-written entries
+			Path file = cacheFile(name);
+			Path temp = Files.createTempFile(cacheDirectory, "asset", ".tmp");
+			try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.allocateDirect(20 + image.pixels.length * 4);
+				buffer.putInt(CACHE_MAGIC).putLong(stamp).putInt(image.width).putInt(image.height);
+				buffer.asIntBuffer().put(image.pixels);
+				buffer.position(buffer.capacity());
+				buffer.flip();
+				while(buffer.hasRemaining())
+					channel.write(buffer);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
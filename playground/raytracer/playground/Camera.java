@@ -2,10 +2,14 @@ package playground;
 
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.util.concurrent.atomic.AtomicInteger;
 
+//Key events arrive on the AWT event thread, so the pressed keys are kept in one atomic bit mask;
+//update() reads it once per tick on the game thread, which is the only thread that moves the camera
 public class Camera implements KeyListener {
+	public static final int LEFT = 1, RIGHT = 2, FORWARD = 4, BACK = 8;
 	public double xPos, yPos, xDir, yDir, xPlane, yPlane;
-	public boolean left, right, forward, back;
+	private final AtomicInteger keys = new AtomicInteger();
 	public final double MOVE_SPEED = 0.08f;
 	public final double ROTATION_SPEED = 0.045f;
 	
@@ -23,39 +27,53 @@ public class Camera implements KeyListener {
 	}
 	
 	public void keyPressed(KeyEvent key) {
-		if(key.getKeyCode() == KeyEvent.VK_LEFT)
-			left = true;
-		if(key.getKeyCode() == KeyEvent.VK_RIGHT)
-			right = true;
-		if(key.getKeyCode() == KeyEvent.VK_UP)
-			forward = true;
-		if(key.getKeyCode() == KeyEvent.VK_DOWN)
-			back = true;
+		press(keyBit(key), true);
 	}
 	
 	public void keyReleased(KeyEvent key) {
-		if(key.getKeyCode() == KeyEvent.VK_LEFT)
-			left = false;
-		if(key.getKeyCode() == KeyEvent.VK_RIGHT)
-			right = false;
-		if(key.getKeyCode() == KeyEvent.VK_UP)
-			forward = false;
-		if(key.getKeyCode() == KeyEvent.VK_DOWN)
-			back = false;
+		press(keyBit(key), false);
 	}
 	
-	public void update(int[][] map) {
+	private static int keyBit(KeyEvent key) {
+		switch(key.getKeyCode()) {
+		case KeyEvent.VK_LEFT: return LEFT;
+		case KeyEvent.VK_RIGHT: return RIGHT;
+		case KeyEvent.VK_UP: return FORWARD;
+		case KeyEvent.VK_DOWN: return BACK;
+		default: return 0;
+		}
+	}
+	
+	public void press(int key, boolean pressed) {
+		if(pressed)
+			keys.getAndUpdate(k -> k | key);
+		else
+			keys.getAndUpdate(k -> k & ~key);
+	}
+	
+	//Replaces all pressed keys at once, e.g. for scripted input
+	public void setKeys(int pressed) {
+		keys.set(pressed);
+	}
+	
+	public void update(GameMap map) {
+		int pressed = keys.get();
+		boolean forward = (pressed & FORWARD) != 0;
+		boolean back = (pressed & BACK) != 0;
+		boolean left = (pressed & LEFT) != 0;
+		boolean right = (pressed & RIGHT) != 0;
+		
 		if(forward) {
-			if(map[(int)(xPos + xDir * MOVE_SPEED)][(int)yPos] == 0)
+			if(map.get((int)(xPos + xDir * MOVE_SPEED), (int)yPos) == 0)
 				xPos += xDir * MOVE_SPEED;
-			if(map[(int)xPos][(int)(yPos + yDir * MOVE_SPEED)] == 0)
+			if(map.get((int)xPos, (int)(yPos + yDir * MOVE_SPEED)) == 0)
 				yPos += yDir * MOVE_SPEED;
 		}
 		
 		if(back) {
-			if(map[(int)(xPos - xDir * MOVE_SPEED)][(int)yPos] == 0)
+			if(map.get((int)(xPos - xDir * MOVE_SPEED), (int)yPos) == 0)
 				xPos -= xDir * MOVE_SPEED;
-			if(map[(int)xPos][(int)(yPos - yDir * MOVE_SPEED)] == 0)
+			if(map.get((int)xPos, (int)(yPos - yDir * MOVE_SPEED)) == 0)
 				yPos -= yDir * MOVE_SPEED;
 		}
 		
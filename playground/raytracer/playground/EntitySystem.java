@@ -0,0 +1,180 @@
+package playground;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+//Moves the NPCs on its own thread at a fixed tick rate. Every tick the positions are copied into a snapshot that
+//is handed to the renderer through a lock-free triple buffer: the simulation never waits for a frame, and the
+//snapshot a frame renders stays unchanged until the renderer asks for the next one
+public class EntitySystem implements Runnable {
+	private static final double TICK_RATE = 60.0;
+	private static final double SPEED = 1.5 / TICK_RATE;
+	//Chance per tick that an NPC picks a new direction while wandering
+	private static final double TURN_CHANCE = 0.01;
+	//How close an NPC may get to a wall
+	private static final double RADIUS = 0.25;
+	//NPCs the player cannot see only think every this many ticks (and then move that many steps at once)
+	private static final int HIDDEN_INTERVAL = 8;
+
+	//Set on the shared index if the shared snapshot has not been picked up by the renderer yet
+	private static final int FRESH = 4;
+	private static final int INDEX_MASK = 3;
+
+	private GameMap map;
+	private Random random;
+	private ArrayList<Sprite> sprites;
+
+	//Simulation state, only touched by the entity thread once it runs
+	private int count;
+	private double[] x, y, dirX, dirY;
+
+	private NPC[][] snapshots;
+	private int back, front;
+	private AtomicInteger shared;
+
+	private Thread thread;
+	private volatile boolean running;
+	private long ticks;
+
+	private VisibilitySets visibility;
+	private volatile int viewerX, viewerY;
+
+	public EntitySystem(GameMap m, long seed) {
+		map = m;
+		random = new Random(seed);
+		sprites = new ArrayList<Sprite>();
+		x = new double[16];
+		y = new double[16];
+		dirX = new double[16];
+		dirY = new double[16];
+	}
+
+	//Adds an NPC; only possible before start()
+	public void add(Sprite sprite, double xp, double yp) {
+		if(thread != null)
+			throw new IllegalStateException("Entities can only be added before the entity system is started");
+		if(count == x.length)
+			grow();
+
+		x[count] = xp;
+		y[count] = yp;
+		sprites.add(sprite);
+		newDirection(count);
+		count++;
+	}
+
+	public void setVisibility(VisibilitySets v) {
+		visibility = v;
+	}
+
+	//Cell the player is in, to tell which NPCs can be seen
+	public void setViewer(int x, int y) {
+		viewerX = x;
+		viewerY = y;
+	}
+
+	public synchronized void start() {
+		snapshots = new NPC[3][count];
+		for(int s = 0; s < 3; s++)
+			for(int i = 0; i < count; i++)
+				snapshots[s][i] = new NPC(sprites.get(i), x[i], y[i]);
+		back = 0;
+		shared = new AtomicInteger(1);
+		front = 2;
+
+		running = true;
+		thread = new Thread(this, "Entities");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void stop() {
+		running = false;
+		if(thread == null)
+			return;
+		try {
+			thread.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	//Latest complete snapshot; only to be called by the rendering thread. The NPCs in it keep their
+	//positions until the next call
+	public NPC[] acquire() {
+		if((shared.get() & FRESH) != 0)
+			front = shared.getAndSet(front) & INDEX_MASK;
+		return snapshots[front];
+	}
+
+	public void run() {
+		final long tickNs = (long)(1000000000.0 / TICK_RATE);
+		long nextTick = System.nanoTime();
+
+		while(running) {
+			tick();
+
+			NPC[] snapshot = snapshots[back];
+			for(int i = 0; i < count; i++) {
+				snapshot[i].xPos = x[i];
+				snapshot[i].yPos = y[i];
+			}
+			back = shared.getAndSet(back | FRESH) & INDEX_MASK;
+
+			nextTick += tickNs;
+			long wait = nextTick - System.nanoTime();
+			if(wait > 0)
+				LockSupport.parkNanos(wait);
+			else
+				nextTick = System.nanoTime();
+		}
+	}
+
+	//Wander AI: walk straight ahead, now and then or when running into a wall pick a new random direction
+	private void tick() {
+		int vx = viewerX, vy = viewerY;
+		ticks++;
+
+		for(int i = 0; i < count; i++) {
+			int steps = 1;
+			if(visibility != null && !visibility.visible(vx, vy, (int)x[i], (int)y[i])) {
+				if((ticks + i) % HIDDEN_INTERVAL != 0)
+					continue;
+				steps = HIDDEN_INTERVAL;
+			}
+
+			if(random.nextDouble() < TURN_CHANCE * steps)
+				newDirection(i);
+
+			double nx = x[i] + dirX[i] * SPEED * steps;
+			double ny = y[i] + dirY[i] * SPEED * steps;
+			if(free(nx, ny)) {
+				x[i] = nx;
+				y[i] = ny;
+			} else {
+				newDirection(i);
+			}
+		}
+	}
+
+	private boolean free(double px, double py) {
+		return map.get((int)(px - RADIUS), (int)(py - RADIUS)) == 0 && map.get((int)(px + RADIUS), (int)(py - RADIUS)) == 0
+				&& map.get((int)(px - RADIUS), (int)(py + RADIUS)) == 0 && map.get((int)(px + RADIUS), (int)(py + RADIUS)) == 0;
+	}
+
+	private void newDirection(int i) {
+		double angle = random.nextDouble() * 2 * Math.PI;
+		dirX[i] = Math.cos(angle);
+		dirY[i] = Math.sin(angle);
+	}
+
+	private void grow() {
+		x = Arrays.copyOf(x, count * 2);
+		y = Arrays.copyOf(y, count * 2);
+		dirX = Arrays.copyOf(dirX, count * 2);
+		dirY = Arrays.copyOf(dirY, count * 2);
+	}
+}
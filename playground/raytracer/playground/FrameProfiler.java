@@ -0,0 +1,80 @@
+package playground;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//Collects the time spent in each phase of a frame and keeps the last HISTORY frames for rolling percentiles.
+//Phases rendered by the worker pool (floor, rays, walls) add up the time of all stripes, i.e. they are CPU time
+//and can exceed the frame time on several cores; the other phases are wall-clock time on the game thread
+public class FrameProfiler implements FrameProfilerMXBean {
+	public static final int TICK = 0, FLOOR = 1, RAYS = 2, WALLS = 3, SPRITES = 4, UPSCALE = 5, PRESENT = 6, FRAME = 7;
+	public static final String[] PHASES = {"tick", "floor", "rays", "walls", "sprites", "upscale", "present", "frame"};
+	private static final int HISTORY = 256;
+
+	//Off by default, so the timing calls cost nothing unless someone is looking
+	private volatile boolean enabled;
+	private long[] current = new long[PHASES.length];
+	private long[][] history = new long[PHASES.length][HISTORY];
+	private long frames;
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean e) {
+		enabled = e;
+	}
+
+	//Adds time to a phase of the current frame; only called from the game thread
+	public void add(int phase, long ns) {
+		current[phase] += ns;
+	}
+
+	public synchronized void endFrame() {
+		int slot = (int)(frames % HISTORY);
+		for(int p = 0; p < PHASES.length; p++) {
+			history[p][slot] = current[p];
+			current[p] = 0;
+		}
+		frames++;
+	}
+
+	public synchronized long getFrameCount() {
+		return frames;
+	}
+
+	//Percentile of a phase over the recorded frames, in milliseconds
+	public synchronized double percentile(int phase, int p) {
+		int n = (int)Math.min(frames, HISTORY);
+		if(n == 0)
+			return 0;
+		long[] sorted = Arrays.copyOf(history[phase], n);
+		Arrays.sort(sorted);
+		int rank = (int)Math.ceil(p / 100.0 * n);
+		return sorted[Math.max(0, rank - 1)] / 1e6;
+	}
+
+	public Map<String, Double> getMedianMillis() {
+		return percentiles(50);
+	}
+
+	public Map<String, Double> getP90Millis() {
+		return percentiles(90);
+	}
+
+	public Map<String, Double> getP99Millis() {
+		return percentiles(99);
+	}
+
+	public Map<String, Double> getMaxMillis() {
+		return percentiles(100);
+	}
+
+	private Map<String, Double> percentiles(int p) {
+		Map<String, Double> result = new LinkedHashMap<String, Double>();
+		for(int phase = 0; phase < PHASES.length; phase++)
+			result.put(PHASES[phase], percentile(phase, p));
+		return result;
+	}
+}
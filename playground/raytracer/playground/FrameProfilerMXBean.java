@@ -0,0 +1,14 @@
+package playground;
+
+import java.util.Map;
+
+//Frame phase timings as seen over JMX (e.g. in JConsole under playground:type=FrameProfiler); all times in milliseconds
+public interface FrameProfilerMXBean {
+	boolean isEnabled();
+	void setEnabled(boolean enabled);
+	long getFrameCount();
+	Map<String, Double> getMedianMillis();
+	Map<String, Double> getP90Millis();
+	Map<String, Double> getP99Millis();
+	Map<String, Double> getMaxMillis();
+}
@@ -0,0 +1,203 @@
+package playground;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+
+//Records frames to disk without holding up the game: capture() only copies the frame into a pooled buffer, and a
+//background thread encodes the buffers and writes them through a FileChannel. If the writer falls behind and the
+//pool runs dry, frames are dropped instead of waiting. Files ending in .rle store every frame as runs of pixels
+//that changed since the previous frame (decode turns them back into PPM); anything else becomes a stream of
+//binary PPM images, which e.g. ffmpeg reads with -f image2pipe
+public class FrameRecorder implements Runnable, FrameRecorderMXBean {
+	private static final int RLE_MAGIC = 0x50475246;
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final int width, height;
+	private final boolean delta;
+	private final int[] end = new int[0];
+	private FileChannel channel;
+	private ByteBuffer out;
+	private ArrayBlockingQueue<int[]> free, full;
+	//Last written frame, only used by the writer thread for delta encoding
+	private int[] previous;
+	private Thread thread;
+	private volatile IOException error;
+	private volatile long written;
+	private volatile long dropped;
+
+	public FrameRecorder(Path file, int w, int h, int poolSize) throws IOException {
+		width = w;
+		height = h;
+		delta = file.toString().endsWith(".rle");
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		free = new ArrayBlockingQueue<int[]>(poolSize);
+		full = new ArrayBlockingQueue<int[]>(poolSize + 1);
+		for(int i = 0; i < poolSize; i++)
+			free.add(new int[w * h]);
+		previous = new int[w * h];
+
+		if(delta) {
+			out.putInt(RLE_MAGIC).putInt(w).putInt(h);
+			flush();
+		}
+
+		thread = new Thread(this, "FrameRecorder");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	//Queues a copy of the frame for writing; returns false if it had to be dropped
+	public boolean capture(int[] pixels) {
+		int[] buffer = error == null ? free.poll() : null;
+		if(buffer == null) {
+			dropped++;
+			return false;
+		}
+
+		System.arraycopy(pixels, 0, buffer, 0, buffer.length);
+		full.add(buffer);
+		return true;
+	}
+
+	public long getWritten() {
+		return written;
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+
+	//Writes the queued frames and closes the file
+	public void close() throws IOException {
+		full.add(end);
+		try {
+			thread.join();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if(error != null)
+			throw error;
+	}
+
+	public void run() {
+		try {
+			while(true) {
+				int[] frame = full.take();
+				if(frame == end)
+					return;
+
+				if(delta)
+					writeDelta(frame);
+				else
+					writePPM(frame);
+				flush();
+				written++;
+
+				//The frame just written is the base of the next delta, so the old base goes back to the pool
+				if(delta) {
+					int[] old = previous;
+					previous = frame;
+					frame = old;
+				}
+				free.add(frame);
+			}
+		} catch(IOException e) {
+			error = e;
+		} catch(InterruptedException e) {
+			// Recording has been aborted
+		}
+	}
+
+	private void writePPM(int[] frame) throws IOException {
+		ensure(32);
+		out.put(("P6\n" + width + " " + height + "\n255\n").getBytes("US-ASCII"));
+		for(int i = 0; i < frame.length; i++) {
+			ensure(3);
+			putRGB(frame[i]);
+		}
+	}
+
+	//Runs of (unchanged count, changed count, changed pixels as RGB) until the frame is complete
+	private void writeDelta(int[] frame) throws IOException {
+		int i = 0;
+		while(i < frame.length) {
+			int start = i;
+			while(i < frame.length && ((frame[i] ^ previous[i]) & 0xFFFFFF) == 0)
+				i++;
+			int skip = i - start;
+
+			start = i;
+			while(i < frame.length && ((frame[i] ^ previous[i]) & 0xFFFFFF) != 0)
+				i++;
+
+			ensure(8);
+			out.putInt(skip).putInt(i - start);
+			for(int p = start; p < i; p++) {
+				ensure(3);
+				putRGB(frame[p]);
+			}
+		}
+	}
+
+	private void putRGB(int color) {
+		out.put((byte)(color >> 16)).put((byte)(color >> 8)).put((byte)color);
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if(out.remaining() < bytes)
+			flush();
+	}
+
+	private void flush() throws IOException {
+		out.flip();
+		while(out.hasRemaining())
+			channel.write(out);
+		out.clear();
+	}
+
+	//Converts a delta recording into a stream of PPM images
+	public static void decode(Path in, Path ppm) throws IOException {
+		try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(in)));
+				OutputStream output = new BufferedOutputStream(Files.newOutputStream(ppm))) {
+			if(input.readInt() != RLE_MAGIC)
+				throw new IOException("Not a frame recording: " + in);
+			int w = input.readInt();
+			int h = input.readInt();
+			byte[] rgb = new byte[w * h * 3];
+			byte[] header = ("P6\n" + w + " " + h + "\n255\n").getBytes("US-ASCII");
+
+			while(input.available() > 0) {
+				int i = 0;
+				while(i < w * h) {
+					i += input.readInt();
+					int count = input.readInt();
+					input.readFully(rgb, i * 3, count * 3);
+					i += count;
+				}
+				output.write(header);
+				output.write(rgb);
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length != 2) {
+			System.err.println("Usage: FrameRecorder <recording.rle> <output.ppm>");
+			System.exit(1);
+		}
+		decode(Paths.get(args[0]), Paths.get(args[1]));
+	}
+}
@@ -0,0 +1,7 @@
+package playground;
+
+//Recording progress as seen over JMX (under playground:type=FrameRecorder while a recording runs)
+public interface FrameRecorderMXBean {
+	long getWritten();
+	long getDropped();
+}
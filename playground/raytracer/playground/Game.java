@@ -1,21 +1,48 @@
 package playground;
 
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.swing.JFrame;
 
 public class Game extends JFrame implements Runnable {
 	private static final long serialVersionUID = 1L;
+	static final String NPC_SPRITE = "demon_cartoon_small.png";
+	private static final int NPC_COUNT = 8;
+	//Frames that may wait for the recorder's writer thread before frames are dropped
+	private static final int RECORDER_BUFFERS = 8;
+	private static final double TICK_RATE = 60.0;
+	//When rendering falls this many ticks behind, the remaining backlog is dropped instead of caught up
+	private static final int MAX_TICKS_PER_FRAME = 5;
+	//Share of the frame time the renderer may use before the resolution is lowered
+	private static final double RENDER_BUDGET = 0.75;
+	//Size of the picture in picture view that shows the player as seen from the first NPC
+	private static final int SPECTATOR_WIDTH = 160, SPECTATOR_HEIGHT = 120;
 	public int mapWidth = 16;
 	public int mapHeight = 16;
 	private Thread thread;
-	private boolean running;
+	private volatile boolean running;
 	private BufferedImage image;
 	public int [] pixels;
+	private int[] renderPixels;
+	private ResolutionScaler scaler;
 	public static int[][] map = 
 		{
 				{1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1},
@@ -35,10 +62,21 @@ public class Game extends JFrame implements Runnable {
 				{1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1},
 				{1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1}
 		};
+	public GameMap gameMap;
 	public ArrayList<Texture> textures;
 	public Camera camera;
 	public Screen screen;
 	public NPC[] npcs;
+	public EntitySystem entities;
+	public VisibilitySets visibility;
+	public FrameProfiler profiler;
+	private volatile boolean showProfiler;
+	private String[] profilerLines;
+	private FrameRecorder recorder;
+	private Viewport view, spectator;
+	private Viewport[] views, viewsWithSpectator;
+	private volatile boolean showSpectator;
+	public Assets assets;
 	
 	public Game() {
 		thread = new Thread(this);
@@ -48,24 +86,111 @@ public class Game extends JFrame implements Runnable {
 		setSize(640, 480);
 		setResizable(false);
 		setTitle("RayCasting experiment");
-		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		//The JVM exits once the window is disposed and the game has been stopped (see below)
+		setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 		setBackground(Color.black);
 		setLocationRelativeTo(null);
 		setVisible(true);
 		
+		//Kick off decoding of all images in parallel before waiting for the first one
+		assets = Assets.fromSystemProperties();
+		for(String name : Texture.ALL)
+			assets.load(name);
+		assets.load(NPC_SPRITE);
+		
 		textures = new ArrayList<Texture>();
-		textures.add(Texture.wood);
-		textures.add(Texture.stone);
-		textures.add(Texture.bluestone);
-		textures.add(Texture.brick);
+		for(String name : Texture.ALL)
+			textures.add(new Texture(assets.get(name)));
 		
 		camera = new Camera(4.5, 4.5, 1, 0, 0, -0.66);
 		addKeyListener(camera);
 		
-		screen = new Screen(map, mapWidth, mapHeight, textures, 640, 480);
-		npcs = new NPC[1];
-		npcs[0] = new NPC("C:\\Users\\Joachim\\git\\LearningJava\\playground\\raytracer\\playground\\res\\demon_cartoon_small.png", 7, 9);
+		//Timing costs a little in the render loop, so frame timings are only collected while the overlay is shown
+		//(F3 or -Dplayground.profile=true) or after enabling them over JMX
+		profiler = new FrameProfiler();
+		showProfiler = Boolean.getBoolean("playground.profile");
+		profiler.setEnabled(showProfiler);
+		addKeyListener(new KeyAdapter() {
+			public void keyPressed(KeyEvent key) {
+				if(key.getKeyCode() == KeyEvent.VK_F3) {
+					showProfiler = !showProfiler;
+					profiler.setEnabled(showProfiler);
+				}
+				else if(key.getKeyCode() == KeyEvent.VK_F2)
+					showSpectator = !showSpectator;
+			}
+		});
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(profiler, new ObjectName("playground:type=FrameProfiler"));
+		} catch(JMException e) {
+			e.printStackTrace();
+		}
+		
+		//Large maps are memory-mapped from a map file given by -Dplayground.map=...
+		String mapFile = System.getProperty("playground.map");
+		if(mapFile != null) {
+			try {
+				gameMap = GameMap.load(Paths.get(mapFile));
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if(gameMap == null) {
+			gameMap = GameMap.fromArray(map);
+			//The small room in the middle is dimly lit
+			for(int x = 4; x <= 5; x++)
+				for(int y = 7; y <= 9; y++)
+					gameMap.setLight(x, y, 64);
+		}
+		mapWidth = gameMap.width;
+		mapHeight = gameMap.height;
+		
+		//Which cells can see each other is cached next to the decoded assets, keyed by the map file (or the map's checksum)
+		visibility = VisibilitySets.loadOrBuild(gameMap, assets.getCacheDirectory());
 		
+		screen = new Screen(gameMap, textures, 640, 480);
+		screen.profiler = profiler;
+		screen.visibility = visibility;
+		//F2 shows a second camera in the corner; both views are rendered in the same pass over the worker pool
+		view = new Viewport(camera, pixels, 0, 640, 640, 480);
+		spectator = new Viewport(new Camera(0, 0, 1, 0, 0, -0.66), new int[SPECTATOR_WIDTH * SPECTATOR_HEIGHT],
+				0, SPECTATOR_WIDTH, SPECTATOR_WIDTH, SPECTATOR_HEIGHT);
+		views = new Viewport[] {view};
+		viewsWithSpectator = new Viewport[] {view, spectator};
+		//NPCs wander around on their own thread; each frame renders their latest snapshot
+		entities = new EntitySystem(gameMap, 1);
+		entities.setVisibility(visibility);
+		Sprite sprite = new Sprite(assets.get(NPC_SPRITE));
+		entities.add(sprite, 7.5, 9.5);
+		Random random = new Random(1);
+		for(int i = 1; i < NPC_COUNT; i++) {
+			int x, y;
+			do {
+				x = random.nextInt(mapWidth);
+				y = random.nextInt(mapHeight);
+			} while(gameMap.get(x, y) != 0);
+			entities.add(sprite, x + 0.5, y + 0.5);
+		}
+		entities.start();
+		npcs = entities.acquire();
+		
+		//-Dplayground.record=session.ppm (or .rle for delta compression) records every displayed frame
+		String recording = System.getProperty("playground.record");
+		if(recording != null) {
+			try {
+				recorder = new FrameRecorder(Paths.get(recording), image.getWidth(), image.getHeight(), RECORDER_BUFFERS);
+				ManagementFactory.getPlatformMBeanServer().registerMBean(recorder, new ObjectName("playground:type=FrameRecorder"));
+			} catch(IOException | JMException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		//Closing the window stops the game loop, finishes the recording and shuts down the worker threads
+		addWindowListener(new WindowAdapter() {
+			public void windowClosing(WindowEvent e) {
+				stop();
+			}
+		});
 		start();
 	}
 	
@@ -81,6 +206,16 @@ public class Game extends JFrame implements Runnable {
 		} catch(InterruptedException e) {
 			e.printStackTrace();
 		}
+		entities.stop();
+		if(recorder != null) {
+			try {
+				recorder.close();
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+		screen.shutdown();
+		assets.shutdown();
 	}
 	
 	public void render() {
@@ -92,28 +227,141 @@ public class Game extends JFrame implements Runnable {
 		
 		Graphics g = bs.getDrawGraphics();
 		g.drawImage(image, 0, 0, image.getWidth(), image.getHeight(), null);
+		if(showProfiler)
+			drawProfiler(g);
+		g.dispose();
 		bs.show();
+		Toolkit.getDefaultToolkit().sync();
 	}
 	
+	//Simulation advances in fixed ticks, independent of the frame rate; every displayed frame is rendered exactly once
 	public void run() {
+		final double tickNs = 1000000000.0 / TICK_RATE;
+		final long frameNs = (long)(1000000000.0 / refreshRate());
+		//Dynamic resolution can be turned off with -Dplayground.dynamicResolution=false
+		if(!"false".equals(System.getProperty("playground.dynamicResolution")))
+			scaler = new ResolutionScaler(image.getWidth(), image.getHeight(), (long)(frameNs * RENDER_BUDGET));
+		renderPixels = new int[pixels.length];
 		long lastTime = System.nanoTime();
-		final double ns = 1000000000.0 / 60.0;
+		long nextFrame = lastTime;
 		double delta = 0;
 		
 		requestFocus();
 		while(running) {
 			long now = System.nanoTime();
-			delta = delta + ((now - lastTime) / ns);
+			delta = delta + ((now - lastTime) / tickNs);
 			lastTime = now;
 			
-			while(delta >= 1) {
-				screen.update(camera, pixels, npcs);
-				camera.update(map);
+			int ticks = 0;
+			while(delta >= 1 && ticks < MAX_TICKS_PER_FRAME) {
+				camera.update(gameMap);
 				delta--;
+				ticks++;
 			}
+			if(delta >= 1)
+				delta = 0;
+			entities.setViewer((int)camera.xPos, (int)camera.yPos);
+			long ticked = System.nanoTime();
 			
+			renderScene();
+			long rendered = System.nanoTime();
 			render();
+			if(recorder != null)
+				recorder.capture(pixels);
+			long presented = System.nanoTime();
+			
+			if(profiler.isEnabled()) {
+				profiler.add(FrameProfiler.TICK, ticked - now);
+				profiler.add(FrameProfiler.PRESENT, presented - rendered);
+				profiler.add(FrameProfiler.FRAME, presented - now);
+				profiler.endFrame();
+			}
+			
+			//Sleep until the next frame is due; if the frame took too long, start the next one right away
+			nextFrame += frameNs;
+			long wait = nextFrame - System.nanoTime();
+			if(wait > 0) {
+				LockSupport.parkNanos(wait);
+			} else {
+				nextFrame = System.nanoTime();
+			}
+		}
+	}
+	
+	//Renders at the resolution the scaler picked and scales the frame up to the window size if needed
+	private void renderScene() {
+		npcs = entities.acquire();
+		long start = System.nanoTime();
+		boolean scaled = scaler != null && scaler.getScale() != 1;
+		view.width = scaled ? scaler.getWidth() : image.getWidth();
+		view.height = scaled ? scaler.getHeight() : image.getHeight();
+		view.stride = view.width;
+		view.pixels = scaled ? renderPixels : pixels;
+		screen.resize(view.width, view.height);
+		
+		boolean withSpectator = showSpectator && npcs.length > 0;
+		if(withSpectator)
+			lookAtPlayer(spectator.camera, npcs[0]);
+		screen.update(withSpectator ? viewsWithSpectator : views, npcs);
+		
+		if(scaled) {
+			long upscale = System.nanoTime();
+			screen.upscale(renderPixels, pixels, image.getWidth(), image.getHeight());
+			if(profiler.isEnabled())
+				profiler.add(FrameProfiler.UPSCALE, System.nanoTime() - upscale);
+		}
+		//Copied in after scaling, so the spectator view always keeps its full resolution
+		if(withSpectator) {
+			int left = image.getWidth() - SPECTATOR_WIDTH - 8;
+			for(int y = 0; y < SPECTATOR_HEIGHT; y++)
+				System.arraycopy(spectator.pixels, y * SPECTATOR_WIDTH, pixels, left + (y + 32) * image.getWidth(), SPECTATOR_WIDTH);
 		}
+		if(scaler != null)
+			scaler.frameRendered(System.nanoTime() - start);
+	}
+	
+	//Puts the camera at the NPC, facing the player
+	private void lookAtPlayer(Camera c, NPC npc) {
+		double dx = camera.xPos - npc.xPos, dy = camera.yPos - npc.yPos;
+		double length = Math.sqrt(dx * dx + dy * dy);
+		if(length < 1e-6) {
+			dx = 1;
+			dy = 0;
+		} else {
+			dx /= length;
+			dy /= length;
+		}
+		c.xPos = npc.xPos;
+		c.yPos = npc.yPos;
+		c.xDir = dx;
+		c.yDir = dy;
+		//Same field of view as the player's camera
+		c.xPlane = dy * 0.66;
+		c.yPlane = -dx * 0.66;
+	}
+	
+	//Median, 99th percentile and maximum per phase over the last frames; the text is refreshed twice a second
+	private void drawProfiler(Graphics g) {
+		if(profilerLines == null || profiler.getFrameCount() % 30 == 0) {
+			profilerLines = new String[FrameProfiler.PHASES.length];
+			for(int p = 0; p < profilerLines.length; p++)
+				profilerLines[p] = String.format("%-8s %6.2f %6.2f %6.2f ms", FrameProfiler.PHASES[p],
+						profiler.percentile(p, 50), profiler.percentile(p, 99), profiler.percentile(p, 100));
+		}
+		
+		g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		g.setColor(new Color(0, 0, 0, 160));
+		g.fillRect(0, 0, 250, 20 + 14 * profilerLines.length);
+		g.setColor(Color.white);
+		g.drawString(String.format("%-8s %6s %6s %6s", "phase", "p50", "p99", "max"), 8, 16);
+		for(int p = 0; p < profilerLines.length; p++)
+			g.drawString(profilerLines[p], 8, 30 + 14 * p);
+	}
+	
+	//Refresh rate of the screen the window is on, or 60 if it is unknown
+	private double refreshRate() {
+		int rate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+		return rate > 0 ? rate : 60.0;
 	}
 	
 	public static void main(String[] args) {
@@ -0,0 +1,174 @@
+package playground;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+//A map of byte-sized cells (0 = empty, otherwise the wall texture number) stored in fixed-size square chunks.
+//Map files hold a small header followed by the chunks; loading a file only memory-maps it, so load time and
+//heap use do not grow with the map size. Cells outside the map read as walls, so rays always stop at the border.
+//An optional second layer with the same layout holds a light level per cell; without it every cell is fully lit
+public class GameMap {
+	public static final int CHUNK_SHIFT = 6;
+	public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final int MAGIC = 0x524D4150;
+	private static final int HEADER_SIZE = 16;
+	private static final int OUTSIDE = 1;
+	public static final int FULL_LIGHT = 255;
+
+	public final int width, height;
+	private final int chunksX;
+	private final ByteBuffer cells;
+	private final int base;
+	private ByteBuffer lights;
+	private int lightBase;
+	//Identity of the file a loaded map was mapped from, null for maps built in memory
+	private String file;
+
+	public GameMap(int w, int h) {
+		this(w, h, ByteBuffer.allocate(chunkBytes(w, h)), 0);
+	}
+
+	private GameMap(int w, int h, ByteBuffer buffer, int offset) {
+		width = w;
+		height = h;
+		chunksX = (w + CHUNK_MASK) >> CHUNK_SHIFT;
+		cells = buffer;
+		base = offset;
+	}
+
+	//Converts a map given as map[x][y]
+	public static GameMap fromArray(int[][] map) {
+		GameMap m = new GameMap(map.length, map[0].length);
+		for(int x = 0; x < m.width; x++)
+			for(int y = 0; y < m.height; y++)
+				m.set(x, y, map[x][y]);
+		return m;
+	}
+
+	//Memory-maps a map file read-only
+	public static GameMap load(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(12) != CHUNK_SHIFT)
+				throw new IOException("Not a map file: " + file);
+
+			int w = buffer.getInt(4);
+			int h = buffer.getInt(8);
+			if(w <= 0 || h <= 0 || buffer.capacity() < HEADER_SIZE + (long)chunkBytes(w, h))
+				throw new IOException("Truncated map file: " + file);
+
+			GameMap map = new GameMap(w, h, buffer, HEADER_SIZE);
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			map.file = String.format("%08x-%x-%x", file.toAbsolutePath().normalize().toString().hashCode(),
+					attributes.size(), attributes.lastModifiedTime().toMillis());
+			if(buffer.capacity() >= HEADER_SIZE + 2L * chunkBytes(w, h)) {
+				map.lights = buffer;
+				map.lightBase = HEADER_SIZE + chunkBytes(w, h);
+			}
+			return map;
+		}
+	}
+
+	public void save(Path file) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(width).putInt(height).putInt(CHUNK_SHIFT).flip();
+			while(header.hasRemaining())
+				channel.write(header);
+
+			ByteBuffer data = cells.duplicate();
+			data.position(base).limit(base + chunkBytes(width, height));
+			while(data.hasRemaining())
+				channel.write(data);
+
+			if(lights != null) {
+				data = lights.duplicate();
+				data.position(lightBase).limit(lightBase + chunkBytes(width, height));
+				while(data.hasRemaining())
+					channel.write(data);
+			}
+		}
+	}
+
+	//Random map with a solid border and scattered pillars, for testing large maps
+	public static GameMap generate(int w, int h, double density, long seed) {
+		GameMap m = new GameMap(w, h);
+		Random r = new Random(seed);
+		for(int x = 0; x < w; x++)
+			for(int y = 0; y < h; y++)
+				if(x == 0 || y == 0 || x == w - 1 || y == h - 1 || r.nextDouble() < density)
+					m.set(x, y, 1 + r.nextInt(4));
+		return m;
+	}
+
+	public int get(int x, int y) {
+		if(x < 0 || y < 0 || x >= width || y >= height)
+			return OUTSIDE;
+		return cells.get(base + index(x, y)) & 0xFF;
+	}
+
+	//Key for caching data derived from the map. A loaded map is identified by its file's path, size and modification
+	//time, so none of its pages have to be read; a map built in memory by its checksum
+	public String cacheKey() {
+		if(file != null)
+			return "file-" + file;
+		return String.format("%08x", checksum());
+	}
+
+	//Checksum of the size and cells (not the lights); reads every cell
+	public int checksum() {
+		CRC32 crc = new CRC32();
+		ByteBuffer data = cells.duplicate();
+		data.position(base).limit(base + chunkBytes(width, height));
+		crc.update(data);
+		return (int)crc.getValue() * 31 + width * 961 + height;
+	}
+
+	public boolean hasLights() {
+		return lights != null;
+	}
+
+	public int getLight(int x, int y) {
+		if(lights == null || x < 0 || y < 0 || x >= width || y >= height)
+			return FULL_LIGHT;
+		return lights.get(lightBase + index(x, y)) & 0xFF;
+	}
+
+	public void setLight(int x, int y, int value) {
+		if(x < 0 || y < 0 || x >= width || y >= height)
+			throw new IndexOutOfBoundsException("Cell (" + x + ", " + y + ") is outside the map");
+		if(lights == null) {
+			lights = ByteBuffer.allocate(chunkBytes(width, height));
+			Arrays.fill(lights.array(), (byte)FULL_LIGHT);
+			lightBase = 0;
+		}
+		lights.put(lightBase + index(x, y), (byte)value);
+	}
+
+	public void set(int x, int y, int value) {
+		if(x < 0 || y < 0 || x >= width || y >= height)
+			throw new IndexOutOfBoundsException("Cell (" + x + ", " + y + ") is outside the map");
+		cells.put(base + index(x, y), (byte)value);
+	}
+
+	private int index(int x, int y) {
+		int chunk = (y >> CHUNK_SHIFT) * chunksX + (x >> CHUNK_SHIFT);
+		return (chunk << (2 * CHUNK_SHIFT)) + ((y & CHUNK_MASK) << CHUNK_SHIFT) + (x & CHUNK_MASK);
+	}
+
+	private static int chunkBytes(int w, int h) {
+		long chunks = (long)((w + CHUNK_MASK) >> CHUNK_SHIFT) * ((h + CHUNK_MASK) >> CHUNK_SHIFT);
+		if(chunks * CHUNK_SIZE * CHUNK_SIZE > Integer.MAX_VALUE - HEADER_SIZE)
+			throw new IllegalArgumentException("Map too large");
+		return (int)(chunks * CHUNK_SIZE * CHUNK_SIZE);
+	}
+}
@@ -0,0 +1,238 @@
+package playground;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+//Renders frames along a scripted camera path without opening a window and reports frame time percentiles.
+//The path only depends on the map and the options, so the checksum printed at the end (and the optional
+//per-frame dump) can be compared between runs to check that an optimization does not change the picture.
+//With --views n the frame is split into n side by side viewports, each looking in a direction turned by
+//a further 1/n of a circle, which are rendered together in one Screen.update.
+//
+//Options: --map <file> | --generate <size>, --frames <n>, --warmup <n>, --size <w>x<h>, --sprites <n>,
+//         --seed <n>, --start <x>,<y>, --views <n>, --dump <directory>
+public class RenderBenchmark {
+	private static final int SEGMENT = 120;
+	private static final int TURN = 30;
+
+	private GameMap map;
+	private Screen screen;
+	private Camera camera;
+	private Viewport[] views;
+	private NPC[] npcs;
+	private int[] pixels;
+	private int frame;
+
+	public RenderBenchmark(GameMap m, VisibilitySets visibility, ArrayList<Texture> textures, Sprite sprite, int sprites, long seed, int w, int h, double startX, double startY, int viewCount) {
+		map = m;
+		screen = new Screen(map, textures, w, h);
+		screen.visibility = visibility;
+		camera = new Camera(startX, startY, 1, 0, 0, -0.66);
+		pixels = new int[w * h];
+		views = new Viewport[viewCount];
+		for(int v = 0; v < viewCount; v++) {
+			int left = v * w / viewCount;
+			int right = (v + 1) * w / viewCount;
+			Camera c = v == 0 ? camera : new Camera(startX, startY, 1, 0, 0, -0.66);
+			views[v] = new Viewport(c, pixels, left, w, right - left, h);
+		}
+
+		//Sprites stand on random free cells
+		Random random = new Random(seed);
+		npcs = new NPC[sprites];
+		for(int i = 0; i < sprites; i++) {
+			int x, y;
+			do {
+				x = random.nextInt(map.width);
+				y = random.nextInt(map.height);
+			} while(map.get(x, y) != 0);
+			npcs[i] = new NPC(sprite, x + 0.5, y + 0.5);
+		}
+	}
+
+	//Renders the next frame and returns how long Screen.update took in nanoseconds
+	public long step() {
+		//Walk forward, turning every few seconds; when a wall is in the way, turn right until the way is free
+		double oldX = camera.xPos, oldY = camera.yPos;
+		boolean walking = frame % SEGMENT < SEGMENT - TURN;
+		camera.setKeys(walking ? Camera.FORWARD : (frame / SEGMENT) % 2 == 0 ? Camera.LEFT : Camera.RIGHT);
+		camera.update(map);
+		if(walking && Math.abs(camera.xPos - oldX) + Math.abs(camera.yPos - oldY) < camera.MOVE_SPEED * 0.5) {
+			camera.setKeys(Camera.RIGHT);
+			camera.update(map);
+		}
+		frame++;
+		for(int v = 1; v < views.length; v++)
+			turn(views[v].camera, 2 * Math.PI * v / views.length);
+
+		long start = System.nanoTime();
+		if(views.length == 1)
+			screen.update(camera, pixels, npcs);
+		else
+			screen.update(views, npcs);
+		return System.nanoTime() - start;
+	}
+
+	//Places c at the main camera, turned by the given angle
+	private void turn(Camera c, double angle) {
+		double cos = Math.cos(angle), sin = Math.sin(angle);
+		c.xPos = camera.xPos;
+		c.yPos = camera.yPos;
+		c.xDir = camera.xDir * cos - camera.yDir * sin;
+		c.yDir = camera.xDir * sin + camera.yDir * cos;
+		c.xPlane = camera.xPlane * cos - camera.yPlane * sin;
+		c.yPlane = camera.xPlane * sin + camera.yPlane * cos;
+	}
+
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	public void shutdown() {
+		screen.shutdown();
+	}
+
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+
+		String mapFile = null;
+		int generate = 0, frames = 600, warmup = 60, width = 640, height = 480, sprites = 16, views = 1;
+		long seed = 1;
+		double startX = Double.NaN, startY = Double.NaN;
+		Path dump = null;
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+			case "--map": mapFile = args[++i]; break;
+			case "--generate": generate = Integer.parseInt(args[++i]); break;
+			case "--frames": frames = Integer.parseInt(args[++i]); break;
+			case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+			case "--sprites": sprites = Integer.parseInt(args[++i]); break;
+			case "--views": views = Integer.parseInt(args[++i]); break;
+			case "--seed": seed = Long.parseLong(args[++i]); break;
+			case "--dump": dump = Paths.get(args[++i]); break;
+			case "--size":
+				String[] size = args[++i].split("x");
+				width = Integer.parseInt(size[0]);
+				height = Integer.parseInt(size[1]);
+				break;
+			case "--start":
+				String[] start = args[++i].split(",");
+				startX = Double.parseDouble(start[0]);
+				startY = Double.parseDouble(start[1]);
+				break;
+			default:
+				System.err.println("Unknown option " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		GameMap map;
+		if(mapFile != null) {
+			map = GameMap.load(Paths.get(mapFile));
+		} else if(generate > 0) {
+			map = GameMap.generate(generate, generate, 0.05, seed);
+		} else {
+			map = GameMap.fromArray(Game.map);
+			if(Double.isNaN(startX)) {
+				startX = 4.5;
+				startY = 4.5;
+			}
+		}
+		if(Double.isNaN(startX)) {
+			int[] cell = freeCellNear(map, map.width / 2, map.height / 2);
+			startX = cell[0] + 0.5;
+			startY = cell[1] + 0.5;
+		}
+
+		Assets assets = Assets.fromSystemProperties();
+		ArrayList<Texture> textures = new ArrayList<Texture>();
+		for(String name : Texture.ALL)
+			assets.load(name);
+		for(String name : Texture.ALL)
+			textures.add(new Texture(assets.get(name)));
+		Sprite sprite = new Sprite(assets.get(Game.NPC_SPRITE));
+		assets.shutdown();
+		VisibilitySets visibility = VisibilitySets.loadOrBuild(map, assets.getCacheDirectory());
+
+		RenderBenchmark benchmark = new RenderBenchmark(map, visibility, textures, sprite, sprites, seed, width, height, startX, startY, views);
+		if(dump != null)
+			Files.createDirectories(dump);
+
+		long[] times = new long[frames];
+		CRC32 total = new CRC32();
+		byte[] rgb = new byte[width * height * 3];
+		try(PrintWriter checksums = dump == null ? null : new PrintWriter(Files.newBufferedWriter(dump.resolve("checksums.txt")))) {
+			for(int f = -warmup; f < frames; f++) {
+				long time = benchmark.step();
+				if(f < 0)
+					continue;
+				times[f] = time;
+
+				toRGB(benchmark.getPixels(), rgb);
+				total.update(rgb);
+				if(dump != null) {
+					CRC32 crc = new CRC32();
+					crc.update(rgb);
+					checksums.printf("%05d %08x%n", f, crc.getValue());
+					writePPM(dump.resolve(String.format("frame-%05d.ppm", f)), rgb, width, height);
+				}
+			}
+		}
+		benchmark.shutdown();
+
+		Arrays.sort(times);
+		long sum = 0;
+		for(long t : times)
+			sum += t;
+		System.out.printf("%d frames at %dx%d in %d views on a %dx%d map, %d threads%n", frames, width, height, views, map.width, map.height, Runtime.getRuntime().availableProcessors());
+		System.out.printf("mean %.2f ms, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n", sum / 1e6 / Math.max(1, frames),
+				percentile(times, 50), percentile(times, 90), percentile(times, 99), percentile(times, 100));
+		System.out.printf("checksum %08x%n", total.getValue());
+	}
+
+	//Nearest-rank percentile in milliseconds
+	private static double percentile(long[] sorted, int p) {
+		if(sorted.length == 0)
+			return 0;
+		int rank = (int)Math.ceil(p / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)] / 1e6;
+	}
+
+	//Searches rings of growing size around the given cell
+	private static int[] freeCellNear(GameMap map, int cx, int cy) {
+		int maxRadius = Math.max(map.width, map.height);
+		for(int r = 0; r < maxRadius; r++) {
+			for(int x = cx - r; x <= cx + r; x++) {
+				for(int y = cy - r; y <= cy + r; y++) {
+					if((Math.abs(x - cx) == r || Math.abs(y - cy) == r) && map.get(x, y) == 0)
+						return new int[] {x, y};
+				}
+			}
+		}
+		throw new IllegalArgumentException("Map has no free cell");
+	}
+
+	private static void toRGB(int[] pixels, byte[] rgb) {
+		for(int i = 0; i < pixels.length; i++) {
+			rgb[3 * i] = (byte)(pixels[i] >> 16);
+			rgb[3 * i + 1] = (byte)(pixels[i] >> 8);
+			rgb[3 * i + 2] = (byte)pixels[i];
+		}
+	}
+
+	private static void writePPM(Path file, byte[] rgb, int w, int h) throws IOException {
+		try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+			out.write(("P6\n" + w + " " + h + "\n255\n").getBytes("US-ASCII"));
+			out.write(rgb);
+		}
+	}
+}
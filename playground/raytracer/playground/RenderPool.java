@@ -0,0 +1,105 @@
+package playground;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+//Persistent worker threads that run a batch of independent tasks once per frame;
+//the calling thread helps out and returns once the whole batch is done. If tasks throw, the rest of the batch
+//still runs so every thread reaches the end of it, and the first failure is rethrown by run(). If the pool itself
+//breaks (a thread interrupted while waiting for the others), this and every later run() throws
+public class RenderPool {
+	public interface Task {
+		void run(int index);
+	}
+
+	private Thread[] workers;
+	private CyclicBarrier start, end;
+	private AtomicInteger nextTask;
+	private AtomicReference<Throwable> failure;
+	private volatile Task task;
+	private volatile int taskCount;
+	private volatile boolean running, broken;
+
+	public RenderPool(int threads) {
+		workers = new Thread[Math.max(0, threads - 1)];
+		start = new CyclicBarrier(workers.length + 1);
+		end = new CyclicBarrier(workers.length + 1);
+		nextTask = new AtomicInteger();
+		failure = new AtomicReference<Throwable>();
+		running = true;
+
+		for(int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread(this::work, "RenderPool-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	public int getThreadCount() {
+		return workers.length + 1;
+	}
+
+	public void run(int count, Task t) {
+		if(broken || !running)
+			throw new IllegalStateException("Render pool is broken or shut down");
+		task = t;
+		taskCount = count;
+		nextTask.set(0);
+
+		try {
+			start.await();
+			runTasks();
+			end.await();
+		} catch(InterruptedException e) {
+			broken = true;
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the render pool", e);
+		} catch(BrokenBarrierException e) {
+			broken = true;
+			throw new IllegalStateException("Render pool is broken", e);
+		}
+		
+		Throwable f = failure.getAndSet(null);
+		if(f instanceof RuntimeException)
+			throw (RuntimeException)f;
+		if(f instanceof Error)
+			throw (Error)f;
+		if(f != null)
+			throw new RuntimeException(f);
+	}
+
+	public void shutdown() {
+		running = false;
+		for(int i = 0; i < workers.length; i++) {
+			workers[i].interrupt();
+		}
+	}
+
+	private void work() {
+		try {
+			while(running) {
+				start.await();
+				runTasks();
+				end.await();
+			}
+		} catch(InterruptedException | BrokenBarrierException e) {
+			//Unless the pool has been shut down, the barriers stay broken, so the next run() throws
+			if(running)
+				broken = true;
+		}
+	}
+
+	private void runTasks() {
+		Task t = task;
+		int count = taskCount;
+		for(int i = nextTask.getAndIncrement(); i < count; i = nextTask.getAndIncrement()) {
+			try {
+				t.run(i);
+			} catch(Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		}
+	}
+}
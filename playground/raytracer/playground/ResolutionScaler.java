@@ -0,0 +1,63 @@
+package playground;
+
+//Picks the internal render resolution so that rendering stays within a frame time budget.
+//The resolution is a multiple of 1/8 of the output size; a smoothed frame time decides when to step down,
+//and it only steps up again once the bigger resolution is expected to fit comfortably, so it does not flicker
+public class ResolutionScaler {
+	private static final int STEPS = 8;
+	private static final int MIN_STEP = 2;
+	private static final double SMOOTHING = 0.1;
+	private static final double HEADROOM = 0.85;
+	private static final int COOLDOWN_FRAMES = 30;
+
+	private int outputWidth, outputHeight;
+	private long budget;
+	private int step;
+	private double average;
+	private int cooldown;
+
+	public ResolutionScaler(int w, int h, long budgetNs) {
+		outputWidth = w;
+		outputHeight = h;
+		budget = budgetNs;
+		step = STEPS;
+	}
+
+	public int getWidth() {
+		return outputWidth * step / STEPS;
+	}
+
+	public int getHeight() {
+		return outputHeight * step / STEPS;
+	}
+
+	public double getScale() {
+		return step / (double)STEPS;
+	}
+
+	//Reports the time the last frame took to render at the current resolution
+	public void frameRendered(long ns) {
+		average = average == 0 ? ns : average + SMOOTHING * (ns - average);
+		if(cooldown > 0) {
+			cooldown--;
+			return;
+		}
+
+		//Rendering cost grows with the pixel count, i.e. with the square of the step
+		if(average > budget && step > MIN_STEP) {
+			setStep(step - 1);
+		} else if(step < STEPS && average * square(step + 1) / square(step) < budget * HEADROOM) {
+			setStep(step + 1);
+		}
+	}
+
+	private void setStep(int s) {
+		average = average * square(s) / square(step);
+		step = s;
+		cooldown = COOLDOWN_FRAMES;
+	}
+
+	private static double square(int x) {
+		return (double)x * x;
+	}
+}
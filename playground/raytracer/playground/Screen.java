@@ -1,34 +1,160 @@
 package playground;
 
 import java.util.ArrayList;
-import java.awt.Color;
+import java.util.Arrays;
 
 public class Screen {
-	public int[][] map;
+	//How quickly walls, floors and sprites fade to black with distance
+	private static final double FOG_DENSITY = 0.06;
+	
+	public GameMap map;
 	public int mapWidth, mapHeight, width, height;
 	public ArrayList<Texture> textures;
+	public TextureAtlas atlas;
+	public ShadeTable shades;
+	public FrameProfiler profiler;
+	public VisibilitySets visibility;
+	public int floorTexture = 1, ceilingTexture = 0;
+	
+	private RenderPool pool;
+	private int stripes;
+	private Viewport main;
+	private Viewport[] mainViews;
+	private Viewport[] frameViews;
+	private NPC[] frameNpcs;
+	private boolean timing;
+	//Time per task spent on floor/ceiling, ray casting and wall texturing, indexed like the profiler phases
+	private long[][] stripeTimes;
+	private int[] upscaleSource, upscaleTarget, upscaleColumns;
+	private int upscaleWidth, upscaleHeight;
 	
-	public Screen(int[][] m, int mw, int mh, ArrayList<Texture> tex, int w, int h) {
+	public Screen(GameMap m, ArrayList<Texture> tex, int w, int h) {
 		map = m;
-		mapWidth = mw;
-		mapHeight = mh;
+		mapWidth = m.width;
+		mapHeight = m.height;
 		textures = tex;
+		atlas = new TextureAtlas(tex);
+		shades = new ShadeTable(FOG_DENSITY);
 		width = w;
 		height = h;
+		
+		//Columns are independent, so they are split into stripes that the worker pool renders in parallel;
+		//a few stripes per thread keep the load balanced when some columns are more expensive than others
+		pool = new RenderPool(Runtime.getRuntime().availableProcessors());
+		stripes = pool.getThreadCount() * 4;
+		
+		main = new Viewport(null, null, 0, w, w, h);
+		mainViews = new Viewport[] {main};
+		stripeTimes = new long[stripes][FrameProfiler.WALLS + 1];
 	}
 	
-	public int[] update(Camera camera, int[] pixels, NPC [] npcs) {
-		boolean npcsToDraw[] = new boolean[npcs.length];
+	public void shutdown() {
+		pool.shutdown();
+	}
+	
+	//Changes the render resolution; the field of view stays the same
+	public void resize(int w, int h) {
+		width = w;
+		height = h;
+	}
+	
+	//Scales a frame rendered at the current resolution up to a larger buffer (nearest neighbour)
+	public void upscale(int[] source, int[] target, int targetWidth, int targetHeight) {
+		if(upscaleColumns == null || upscaleColumns.length != targetWidth)
+			upscaleColumns = new int[targetWidth];
+		for(int x = 0; x < targetWidth; x++)
+			upscaleColumns[x] = x * width / targetWidth;
+		
+		upscaleSource = source;
+		upscaleTarget = target;
+		upscaleWidth = targetWidth;
+		upscaleHeight = targetHeight;
+		pool.run(stripes, this::upscaleStripe);
+	}
+	
+	private void upscaleStripe(int stripe) {
+		int[] source = upscaleSource;
+		int[] target = upscaleTarget;
+		int[] columns = upscaleColumns;
+		int rowStart = stripe * upscaleHeight / stripes;
+		int rowEnd = (stripe + 1) * upscaleHeight / stripes;
 		
-		for(int n = 0; n < pixels.length / 2; n++)  {
-			if(pixels[n] != Color.DARK_GRAY.getRGB()) pixels[n] = Color.DARK_GRAY.getRGB();
+		for(int y = rowStart; y < rowEnd; y++) {
+			int sourceRow = (y * height / upscaleHeight) * width;
+			int targetRow = y * upscaleWidth;
+			for(int x = 0; x < upscaleWidth; x++)
+				target[targetRow + x] = source[sourceRow + columns[x]];
 		}
+	}
+	
+	//Renders the camera into the whole of pixels at the current resolution
+	public int[] update(Camera camera, int[] pixels, NPC [] npcs) {
+		main.camera = camera;
+		main.pixels = pixels;
+		main.stride = width;
+		main.width = width;
+		main.height = height;
+		update(mainViews, npcs);
+		return pixels;
+	}
+	
+	//Renders several viewports at once: the stripes of all views form one batch of tasks for the worker pool,
+	//so small views fill the gaps left by big ones instead of each view being a pass of its own
+	public void update(Viewport[] views, NPC[] npcs) {
+		for(Viewport view : views) {
+			view.prepare(stripes, npcs.length);
+			view.spriteGrid.rebuild(npcs, visibility, (int)view.camera.xPos, (int)view.camera.yPos);
+			view.frame++;
+		}
+		int tasks = views.length * stripes;
+		if(stripeTimes.length < tasks)
+			stripeTimes = new long[tasks][FrameProfiler.WALLS + 1];
+		
+		frameViews = views;
+		frameNpcs = npcs;
+		timing = profiler != null && profiler.isEnabled();
+		pool.run(tasks, this::renderStripe);
+		
+		long start = timing ? System.nanoTime() : 0;
+		for(Viewport view : views)
+			projectSprites(view, npcs);
+		pool.run(tasks, this::drawSpriteStripe);
 		
-		for(int i = pixels.length/ 2; i < pixels.length; i++) {
-			if(pixels[i] != Color.gray.getRGB()) pixels[i] = Color.gray.getRGB();
+		if(timing) {
+			profiler.add(FrameProfiler.SPRITES, System.nanoTime() - start);
+			for(int t = 0; t < tasks; t++) {
+				for(int phase = FrameProfiler.FLOOR; phase <= FrameProfiler.WALLS; phase++) {
+					profiler.add(phase, stripeTimes[t][phase]);
+					stripeTimes[t][phase] = 0;
+				}
+			}
 		}
+	}
+	
+	private void renderStripe(int task) {
+		Viewport view = frameViews[task / stripes];
+		int stripe = task % stripes;
+		Camera camera = view.camera;
+		int[] pixels = view.pixels;
+		int offset = view.offset, stride = view.stride;
+		int width = view.width, height = view.height;
+		double[] zBuffer = view.zBuffer;
+		SpriteGrid spriteGrid = view.spriteGrid;
+		int frame = view.frame;
+		int[] seen = view.stripeSeen[stripe];
+		int[] stamp = view.stripeStamp[stripe];
+		int seenCount = 0;
+		int stripeStart = stripe * width / stripes;
+		int stripeEnd = (stripe + 1) * width / stripes;
+		long[] times = stripeTimes[task];
+		long time = timing ? System.nanoTime() : 0;
+		
+		//Floor and ceiling cover every pixel the walls don't, so no separate clear is needed
+		castFloorAndCeiling(view, stripeStart, stripeEnd);
+		if(timing)
+			time = lap(times, FrameProfiler.FLOOR, time);
 		
-		for(int x = 0; x < width; x++) {
+		for(int x = stripeStart; x < stripeEnd; x++) {
 			double cameraX = 2 * x / (double)(width) - 1;
 		    double rayDirX = camera.xDir + camera.xPlane * cameraX;
 		    double rayDirY = camera.yDir + camera.yPlane * cameraX;
@@ -49,6 +175,7 @@ public class Screen {
 		    //Direction to go in x and y
 		    int stepX, stepY;
 		    boolean hit = false;//was a wall hit
+		    int cell = 0;//content of the map cell the ray is in
 		    int side=0;//was the wall vertical or horizontal
 		    
 		    //Figure out the step direction and initial distance to a side
@@ -89,14 +216,16 @@ public class Screen {
 		        	mapY += stepY;
 		        	side = 1;
 		        }
-		    	//Check if ray has hit a wall
-		    	//System.out.println(mapX + ", " + mapY + ", " + map[mapX][mapY]);
-		    	if(map[mapX][mapY] > 0) hit = true;
+		    	//Check if ray has hit a wall (everything outside the map counts as wall)
+		    	cell = map.get(mapX, mapY);
+		    	if(cell > 0) hit = true;
 		    	
+		    	//Remember the sprites standing in cells the ray passes through
 		    	if(!hit) {
-		    		for(int i = 0; i < npcs.length; i++) {
-		    			if(mapX == npcs[i].xPos && mapY == npcs[i].yPos) {
-		    				npcsToDraw[i] = true;
+		    		for(int i = spriteGrid.first(mapX, mapY); i >= 0; i = spriteGrid.next(i)) {
+		    			if(stamp[i] != frame) {
+		    				stamp[i] = frame;
+		    				seen[seenCount++] = i;
 		    			}
 		    		}
 		    	}
@@ -107,6 +236,9 @@ public class Screen {
 		    	perpWallDist = Math.abs((mapX - camera.xPos + (1 - stepX) / 2) / rayDirX);
 		    else
 		    	perpWallDist = Math.abs((mapY - camera.yPos + (1 - stepY) / 2) / rayDirY);	
+		    zBuffer[x] = perpWallDist;
+		    if(timing)
+		    	time = lap(times, FrameProfiler.RAYS, time);
 		    
 		    //Now calculate the height of the wall based on the distance from the camera
 		    int lineHeight;
@@ -121,8 +253,15 @@ public class Screen {
 		    if(drawEnd >= height) 
 		    	drawEnd = height - 1;
 		    
+		    //A wall farther away than the screen is high is less than a pixel tall, so there is nothing to draw
+		    if(lineHeight == 0) {
+		    	if(timing)
+		    		time = lap(times, FrameProfiler.WALLS, time);
+		    	continue;
+		    }
+		    
 		    //add a texture
-		    int texNum = map[mapX][mapY] - 1;
+		    int texNum = (cell - 1) % atlas.count;
 		    double wallX;//Exact position of where wall was hit
 		    if(side==1) {//If its a y-axis wall
 		    	wallX = (camera.xPos + ((mapY - camera.yPos + (1 - stepY) / 2) / rayDirY) * rayDirX);
@@ -132,64 +271,162 @@ public class Screen {
 		    wallX-=Math.floor(wallX);
 		    
 		    //x coordinate on the texture
-		    int texX = (int)(wallX * (textures.get(texNum).SIZE));
-		    if(side == 0 && rayDirX > 0) texX = textures.get(texNum).SIZE - texX - 1;
-		    if(side == 1 && rayDirY < 0) texX = textures.get(texNum).SIZE - texX - 1;
+		    int texX = (int)(wallX * atlas.size);
+		    if(side == 0 && rayDirX > 0) texX = atlas.size - texX - 1;
+		    if(side == 1 && rayDirY < 0) texX = atlas.size - texX - 1;
 		    
-		    //calculate y coordinate on texture
-		    for(int y=drawStart; y<drawEnd; y++) {
-		    	int texY = (((y*2 - height + lineHeight) << 6) / lineHeight) / 2;
-		    	int color;
-		    	if(side==0) color = textures.get(texNum).pixels[texX + (texY * textures.get(texNum).SIZE)];
-		    	else color = (textures.get(texNum).pixels[texX + (texY * textures.get(texNum).SIZE)]>>1) & 8355711;//Make y sides darker
-		    	pixels[x + y*(width)] = color;
-		    }
+		    //Walls are lit by the cell in front of the face the ray hit
+		    int light = side == 0 ? map.getLight(mapX - stepX, mapY) : map.getLight(mapX, mapY - stepY);
+		    int factor = shades.factor(shades.shade(perpWallDist, light));
 		    
-		    for(int i = 0; i < npcs.length; i++) {
-		    	if(npcsToDraw[i]) {
-		    		double distance = Math.sqrt((npcs[i].xPos - camera.xPos) * (npcs[i].xPos - camera.xPos)
-		    				+ (npcs[i].yPos - camera.yPos) * (npcs[i].yPos - camera.yPos));
-		    		
-		    		if(distance < 1.4f) continue;
-		    		
-		    		int scaledHeight = (int)(npcs[i].height / distance);
-		    		int scaledWidth = (int)(npcs[i].width / distance);
-		    		
-		    		if(scaledHeight > height) 
-		    			scaledHeight = height;
-		    		
-		    		if(scaledWidth > width)
-		    			scaledWidth = width;
-		    		
-		    		// Determine which column of the sprite to draw
-		    		double u = ((npcs[i].xPos - camera.xPos) * rayDirY 
-		    				- (npcs[i].yPos - camera.yPos) * rayDirX)
-		    				 / (rayDirX * 0 - rayDirY * 1);
-		    		texX = (int)(Math.abs(u) * npcs[i].width);
-		    		
-		    		//calculate lowest and highest pixel to fill in current stripe
-				    drawStart = -scaledHeight/2 + height/2;
-				    if(drawStart < 0)
-				    	drawStart = 0;
-				    drawEnd = scaledHeight/2 + height/2;
-				    if(drawEnd >= height) 
-				    	drawEnd = height - 1;
-		    		
-		    		for(int y = drawStart; y < drawEnd; y++) {
-		    			int texY = (y - drawStart) * npcs[i].height / scaledHeight;
-		    			
-		    			if(texY * npcs[i].width + texX >= npcs[i].pixels.length)
-		    				break;
-		    			
-		    			if(npcs[i].pixels[texY * npcs[i].width + texX] != 0)
-		    				pixels[x + y*(width)] = npcs[i].pixels[texY * npcs[i].width + texX];
-		    		}
-		    		
-		    		npcsToDraw[i] = false;
-		    	}
+		    //Pick the mip level matching the stripe height and the pre-darkened variant for y sides,
+		    //then step down the texture column in 16.16 fixed point
+		    int level = atlas.mipLevel(lineHeight);
+		    int texSize = atlas.size >> level;
+		    int texMask = texSize - 1;
+		    int column = atlas.offset(texNum, side, level) + (texX >> level) * texSize;
+		    int[] texels = atlas.data;
+		    long step = ((long)texSize << 16) / lineHeight;
+		    long texPos = (drawStart - height / 2 + lineHeight / 2) * step;
+		    
+		    for(int y=drawStart; y<drawEnd; y++) {
+		    	pixels[offset + x + y*stride] = ShadeTable.scale(texels[column + ((int)(texPos >> 16) & texMask)], factor);
+		    	texPos += step;
 		    }
+		    if(timing)
+		    	time = lap(times, FrameProfiler.WALLS, time);
 		}
 		
-		return pixels;
+		view.stripeSeenCount[stripe] = seenCount;
+	}
+	
+	//Adds the time since start to a phase and returns the current time
+	private static long lap(long[] times, int phase, long start) {
+		long now = System.nanoTime();
+		times[phase] += now - start;
+		return now;
+	}
+	
+	//Textures floor and ceiling row by row: all pixels of a row lie at the same distance from the camera,
+	//so walking along the row is a single constant step through the map per pixel. Positions are kept
+	//in 16.16 fixed point, of which only the fraction within the cell is needed for texturing.
+	//Fog is the same along a row; cell lights, if the map has any, are looked up whenever the row enters a new cell
+	private void castFloorAndCeiling(Viewport view, int stripeStart, int stripeEnd) {
+		Camera camera = view.camera;
+		int[] pixels = view.pixels;
+		int width = view.width, height = view.height;
+		int[] texels = atlas.data;
+		boolean lit = map.hasLights();
+		int floor = atlas.offset(floorTexture, 0, 0);
+		int ceiling = atlas.offset(ceilingTexture, 1, 0);
+		int texSize = atlas.size;
+		int shift = 16 - Integer.numberOfTrailingZeros(texSize);
+		int mask = texSize - 1;
+		
+		//Rays through the leftmost and rightmost column
+		double rayDirX0 = camera.xDir - camera.xPlane;
+		double rayDirY0 = camera.yDir - camera.yPlane;
+		double rayDirX1 = camera.xDir + camera.xPlane;
+		double rayDirY1 = camera.yDir + camera.yPlane;
+		
+		//Camera height halfway between floor and ceiling, matching the wall projection
+		double posZ = 0.5 * height;
+		
+		for(int y = height / 2; y < height; y++) {
+			double rowDistance = posZ / (y - height / 2 + 0.5);
+			double stepX = rowDistance * (rayDirX1 - rayDirX0) / width;
+			double stepY = rowDistance * (rayDirY1 - rayDirY0) / width;
+			//16.16 fixed point in longs, so positions on maps wider than 32768 cells do not overflow
+			long floorX = (long)((camera.xPos + rowDistance * rayDirX0 + stepX * stripeStart) * 65536);
+			long floorY = (long)((camera.yPos + rowDistance * rayDirY0 + stepY * stripeStart) * 65536);
+			long fixedStepX = (long)(stepX * 65536);
+			long fixedStepY = (long)(stepY * 65536);
+			
+			int floorRow = view.offset + y * view.stride;
+			int ceilingRow = view.offset + (height - y - 1) * view.stride;
+			
+			int fog = shades.fog(rowDistance);
+			int factor = shades.factor(ShadeTable.light(fog, GameMap.FULL_LIGHT));
+			int cellX = Integer.MIN_VALUE, cellY = Integer.MIN_VALUE;
+			
+			for(int x = stripeStart; x < stripeEnd; x++) {
+				if(lit && ((int)(floorX >> 16) != cellX || (int)(floorY >> 16) != cellY)) {
+					cellX = (int)(floorX >> 16);
+					cellY = (int)(floorY >> 16);
+					factor = shades.factor(ShadeTable.light(fog, map.getLight(cellX, cellY)));
+				}
+				
+				//Atlas is column-major; the ceiling uses the pre-darkened variant
+				int texel = ((int)(floorX >> shift) & mask) * texSize + ((int)(floorY >> shift) & mask);
+				pixels[floorRow + x] = ShadeTable.scale(texels[floor + texel], factor);
+				pixels[ceilingRow + x] = ShadeTable.scale(texels[ceiling + texel], factor);
+				
+				floorX += fixedStepX;
+				floorY += fixedStepY;
+			}
+		}
+	}
+	
+	//Gathers the sprites seen by any ray, transforms them into camera space and sorts them far to near
+	private void projectSprites(Viewport view, NPC[] npcs) {
+		Camera camera = view.camera;
+		double invDet = 1.0 / (camera.xPlane * camera.yDir - camera.xDir * camera.yPlane);
+		int visibleSprites = 0;
+		
+		for(int s = 0; s < stripes; s++) {
+			for(int n = 0; n < view.stripeSeenCount[s]; n++) {
+				int i = view.stripeSeen[s][n];
+				if(view.seenStamp[i] == view.frame)
+					continue;
+				view.seenStamp[i] = view.frame;
+				
+				double spriteX = npcs[i].xPos - camera.xPos;
+				double spriteY = npcs[i].yPos - camera.yPos;
+				double transformX = invDet * (camera.yDir * spriteX - camera.xDir * spriteY);
+				double transformY = invDet * (-camera.yPlane * spriteX + camera.xPlane * spriteY);
+				
+				//Skip sprites behind or right next to the camera, sprites lost in the fog (as black as everything
+				//around them) and sprites whose image failed to load
+				if(transformY < 0.1 || shades.fog(transformY) == 0 || npcs[i].sprite == null)
+					continue;
+				
+				view.spriteDepth[i] = transformY;
+				view.spriteScreenX[i] = (int)((view.width / 2) * (1 + transformX / transformY));
+				view.spriteHeight[i] = Math.abs((int)(view.height / transformY));
+				view.spriteWidth[i] = view.spriteHeight[i] * npcs[i].sprite.width / npcs[i].sprite.height;
+				view.spriteImage[i] = shades.sprite(npcs[i].sprite.texels, shades.shade(transformY, map.getLight((int)npcs[i].xPos, (int)npcs[i].yPos)));
+				
+				//Sort key: depth in the upper half (positive floats sort like ints), sprite index in the lower half
+				view.spriteOrder[visibleSprites++] = ((long)Float.floatToIntBits((float)transformY) << 32) | i;
+			}
+		}
+		
+		Arrays.sort(view.spriteOrder, 0, visibleSprites);
+		view.visibleSprites = visibleSprites;
+	}
+	
+	private void drawSpriteStripe(int task) {
+		Viewport view = frameViews[task / stripes];
+		int stripe = task % stripes;
+		NPC[] npcs = frameNpcs;
+		int stripeStart = stripe * view.width / stripes;
+		int stripeEnd = (stripe + 1) * view.width / stripes;
+		
+		//Far to near, so nearer sprites are painted over farther ones
+		for(int n = view.visibleSprites - 1; n >= 0; n--) {
+			int i = (int)view.spriteOrder[n];
+			int spriteWidth = view.spriteWidth[i], spriteHeight = view.spriteHeight[i];
+			int left = view.spriteScreenX[i] - spriteWidth / 2;
+			int top = view.height / 2 - spriteHeight / 2;
+			
+			for(int x = Math.max(left, stripeStart); x < Math.min(left + spriteWidth, stripeEnd); x++) {
+				//Depth test against the wall in this column
+				if(view.spriteDepth[i] >= view.zBuffer[x])
+					continue;
+				
+				int texX = (x - left) * npcs[i].sprite.width / spriteWidth;
+				npcs[i].sprite.drawColumn(view.spriteImage[i], view.pixels, view.offset, view.stride, view.height, x, texX, top, spriteHeight);
+			}
+		}
 	}
 }
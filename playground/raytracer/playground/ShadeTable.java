@@ -0,0 +1,75 @@
+package playground;
+
+import java.util.IdentityHashMap;
+
+//Precomputed lighting. Brightness is quantized to SHADES levels, each with a scale factor that is applied to the
+//texels as they are drawn, so the texture atlas is only stored once and stays compact in the cache. The level
+//combines distance fog (fading to black) with the light level of the cell; sprites get one level per sprite, and
+//their pre-shaded images are created when first needed
+public class ShadeTable {
+	public static final int SHADES = 32;
+	//Distances are quantized to 1/16 of a cell; everything beyond the end of the table gets its last level
+	private static final int DISTANCE_STEPS = 16;
+	private static final int MAX_DISTANCE = 128;
+
+	//Scale factor per level, in 1/256
+	private final int[] factors;
+	private final int[] distanceShade;
+	private IdentityHashMap<int[], int[][]> sprites;
+
+	public ShadeTable(double fogDensity) {
+		factors = new int[SHADES];
+		for(int s = 0; s < SHADES; s++)
+			factors[s] = s * 256 / (SHADES - 1);
+
+		distanceShade = new int[MAX_DISTANCE * DISTANCE_STEPS];
+		for(int i = 0; i < distanceShade.length; i++)
+			distanceShade[i] = (int)Math.round(Math.exp(-fogDensity * i / DISTANCE_STEPS) * (SHADES - 1));
+
+		sprites = new IdentityHashMap<int[], int[][]>();
+	}
+
+	//Brightness of fog alone at the given distance, from 0 (black) to SHADES - 1 (unchanged)
+	public int fog(double distance) {
+		return distanceShade[Math.min((int)(distance * DISTANCE_STEPS), distanceShade.length - 1)];
+	}
+
+	//Combines a fog level with a cell light level (0 to GameMap.FULL_LIGHT)
+	public static int light(int fog, int light) {
+		return (fog * (light + 1)) >> 8;
+	}
+
+	public int shade(double distance, int light) {
+		return light(fog(distance), light);
+	}
+
+	//Factor to pass to scale() for a shade level
+	public int factor(int shade) {
+		return factors[shade];
+	}
+
+	//The sprite image pre-shaded to the given level. Not thread-safe, only called while projecting sprites
+	public int[] sprite(int[] pixels, int shade) {
+		int[][] levels = sprites.get(pixels);
+		if(levels == null) {
+			levels = new int[SHADES][];
+			sprites.put(pixels, levels);
+		}
+
+		if(levels[shade] == null) {
+			int factor = factors[shade];
+			int[] shaded = new int[pixels.length];
+			for(int i = 0; i < pixels.length; i++)
+				shaded[i] = scale(pixels[i], factor);
+			levels[shade] = shaded;
+		}
+		return levels[shade];
+	}
+
+	//Scales the color channels by factor / 256 and keeps alpha; red and blue are scaled with a single multiply
+	public static int scale(int color, int factor) {
+		int redBlue = (((color & 0xFF00FF) * factor) >>> 8) & 0xFF00FF;
+		int green = (((color & 0xFF00) * factor) >>> 8) & 0xFF00;
+		return (color & 0xFF000000) | redBlue | green;
+	}
+}
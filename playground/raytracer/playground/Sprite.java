@@ -0,0 +1,82 @@
+package playground;
+
+//A sprite image prepared for drawing in vertical screen columns: the texels are stored column by column, and each
+//column keeps a list of spans of opaque texels, so drawing only visits texels that are actually visible and needs
+//no transparency test per pixel
+public class Sprite {
+	public final int width, height;
+	public final int[] texels;
+	//Spans of column x are the (first row, end row) pairs in spans[spanStart[x]] to spans[spanStart[x + 1]]
+	private final int[] spanStart;
+	private final int[] spans;
+
+	public Sprite(Assets.Image image) {
+		width = image.width;
+		height = image.height;
+		texels = new int[width * height];
+		spanStart = new int[width + 1];
+
+		int count = 0;
+		for(int x = 0; x < width; x++) {
+			for(int y = 0; y < height; y++) {
+				texels[x * height + y] = image.pixels[y * width + x];
+				if(opaque(image, x, y) && (y == 0 || !opaque(image, x, y - 1)))
+					count++;
+			}
+		}
+
+		spans = new int[count * 2];
+		int n = 0;
+		for(int x = 0; x < width; x++) {
+			spanStart[x] = n;
+			for(int y = 0; y < height; y++) {
+				if(!opaque(image, x, y))
+					continue;
+				spans[n++] = y;
+				while(y < height && opaque(image, x, y))
+					y++;
+				spans[n++] = y;
+			}
+		}
+		spanStart[width] = n;
+	}
+
+	private static boolean opaque(Assets.Image image, int x, int y) {
+		return (image.pixels[y * image.width + x] & 0xFF000000) != 0;
+	}
+
+	//Draws column texX of the sprite (or of a shaded copy of its texels) scaled to spriteHeight pixels, starting at
+	//screen row top; screen pixel (x, y) is screenBuffer[offset + x + y * stride]. Texel rows are picked exactly as
+	//(y - top) * height / spriteHeight, stepped without division
+	public void drawColumn(int[] image, int[] screenBuffer, int offset, int stride, int screenHeight, int x, int texX, int top, int spriteHeight) {
+		int column = texX * height;
+
+		for(int s = spanStart[texX]; s < spanStart[texX + 1]; s += 2) {
+			//First screen rows whose texel row reaches the start and the end of the span
+			int drawStart = Math.max(top + ceilDiv(spans[s] * spriteHeight, height), 0);
+			int drawEnd = Math.min(top + ceilDiv(spans[s + 1] * spriteHeight, height), screenHeight);
+			if(drawStart >= drawEnd)
+				continue;
+
+			int numerator = (drawStart - top) * height;
+			int texY = numerator / spriteHeight;
+			int remainder = numerator - texY * spriteHeight;
+			int whole = height / spriteHeight;
+			int fraction = height - whole * spriteHeight;
+
+			for(int y = drawStart; y < drawEnd; y++) {
+				screenBuffer[offset + x + y * stride] = image[column + texY];
+				texY += whole;
+				remainder += fraction;
+				if(remainder >= spriteHeight) {
+					remainder -= spriteHeight;
+					texY++;
+				}
+			}
+		}
+	}
+
+	private static int ceilDiv(int a, int b) {
+		return (a + b - 1) / b;
+	}
+}
@@ -0,0 +1,70 @@
+package playground;
+
+import java.util.Arrays;
+
+//Maps map cells to the sprites standing in them, so rays can look up sprites per cell in O(1);
+//a hash table keyed by cell keeps the memory proportional to the number of sprites, not the map size
+public class SpriteGrid {
+	private long[] keys;
+	private int[] first;
+	private int[] next;
+	private int mask;
+
+	public SpriteGrid() {
+		resize(16);
+		next = new int[0];
+	}
+
+	//Sprites in cells that are not potentially visible from the camera's cell are left out (if visibility is given)
+	public void rebuild(NPC[] npcs, VisibilitySets visibility, int viewX, int viewY) {
+		if(keys.length < npcs.length * 2)
+			resize(Integer.highestOneBit(npcs.length * 4));
+		if(next.length < npcs.length)
+			next = new int[npcs.length];
+
+		Arrays.fill(first, -1);
+		for(int i = 0; i < npcs.length; i++) {
+			int x = (int)npcs[i].xPos, y = (int)npcs[i].yPos;
+			if(visibility != null && !visibility.visible(viewX, viewY, x, y))
+				continue;
+			int slot = slot(x, y, true);
+			next[i] = first[slot];
+			first[slot] = i;
+		}
+	}
+
+	//Index of the first sprite in the cell, or -1 if the cell is empty
+	public int first(int x, int y) {
+		int slot = slot(x, y, false);
+		return slot < 0 ? -1 : first[slot];
+	}
+
+	//Index of the next sprite in the same cell, or -1
+	public int next(int sprite) {
+		return next[sprite];
+	}
+
+	private int slot(int x, int y, boolean insert) {
+		long key = ((long)x << 32) | (y & 0xFFFFFFFFL);
+		int slot = (int)((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+
+		//Linear probing; a slot is free if no sprite has been put into it during this rebuild
+		while(first[slot] != -1) {
+			if(keys[slot] == key)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+
+		if(!insert)
+			return -1;
+		keys[slot] = key;
+		return slot;
+	}
+
+	private void resize(int capacity) {
+		keys = new long[capacity];
+		first = new int[capacity];
+		Arrays.fill(first, -1);
+		mask = capacity - 1;
+	}
+}
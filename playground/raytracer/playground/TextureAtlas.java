@@ -0,0 +1,91 @@
+package playground;
+
+import java.util.List;
+
+//All wall textures packed into one array. Every texture is stored once as is and once darkened for y-side walls,
+//each with a chain of mip levels (64x64, 32x32, ... 1x1). Texels are stored column by column, so drawing a
+//vertical wall stripe reads consecutive ints
+public class TextureAtlas {
+	public final int[] data;
+	public final int size;
+	public final int levels;
+	public final int count;
+	private int[] offsets;
+
+	public TextureAtlas(List<Texture> textures) {
+		size = textures.get(0).SIZE;
+		if(Integer.bitCount(size) != 1)
+			throw new IllegalArgumentException("Texture size must be a power of two");
+		levels = Integer.numberOfTrailingZeros(size) + 1;
+		count = textures.size();
+
+		//Each mip chain takes a third more space than its base level
+		int chainLength = 0;
+		for(int level = 0; level < levels; level++)
+			chainLength += (size >> level) * (size >> level);
+
+		data = new int[textures.size() * 2 * chainLength];
+		offsets = new int[textures.size() * 2 * levels];
+
+		int offset = 0;
+		for(int t = 0; t < textures.size(); t++) {
+			Texture texture = textures.get(t);
+			if(texture.SIZE != size)
+				throw new IllegalArgumentException("All textures must have the same size");
+
+			for(int side = 0; side < 2; side++) {
+				for(int level = 0; level < levels; level++) {
+					offsets[(t * 2 + side) * levels + level] = offset;
+					int levelSize = size >> level;
+
+					if(level == 0) {
+						//Transpose the row-major texture into column-major order
+						for(int x = 0; x < size; x++) {
+							for(int y = 0; y < size; y++) {
+								int color = texture.pixels[y * size + x];
+								data[offset + x * size + y] = side == 0 ? color : (color >> 1) & 8355711;
+							}
+						}
+					} else {
+						downsample(offset(t, side, level - 1), levelSize * 2, offset);
+					}
+
+					offset += levelSize * levelSize;
+				}
+			}
+		}
+	}
+
+	public int offset(int texture, int side, int level) {
+		return offsets[(texture * 2 + side) * levels + level];
+	}
+
+	//Picks the smallest mip level that still has at least as many texels as the wall stripe has pixels
+	public int mipLevel(int lineHeight) {
+		int level = 0;
+		while(level < levels - 1 && (size >> (level + 1)) >= lineHeight)
+			level++;
+		return level;
+	}
+
+	//Averages each 2x2 block of texels per color channel
+	private void downsample(int source, int sourceSize, int target) {
+		int targetSize = sourceSize / 2;
+
+		for(int x = 0; x < targetSize; x++) {
+			for(int y = 0; y < targetSize; y++) {
+				int a = data[source + (2 * x) * sourceSize + 2 * y];
+				int b = data[source + (2 * x) * sourceSize + 2 * y + 1];
+				int c = data[source + (2 * x + 1) * sourceSize + 2 * y];
+				int d = data[source + (2 * x + 1) * sourceSize + 2 * y + 1];
+
+				int color = 0;
+				for(int shift = 0; shift < 32; shift += 8) {
+					int sum = ((a >>> shift) & 255) + ((b >>> shift) & 255) + ((c >>> shift) & 255) + ((d >>> shift) & 255);
+					color |= (sum / 4) << shift;
+				}
+				data[target + x * targetSize + y] = color;
+			}
+		}
+	}
+}
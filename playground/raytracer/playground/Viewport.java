@@ -0,0 +1,51 @@
+package playground;
+
+//One camera rendered into a rectangle of a pixel buffer: the rectangle starts at index offset and its rows are
+//stride pixels apart, so a viewport can be a region of a shared frame (split screen) or a buffer of its own
+//(picture in picture). Viewports rendered in the same Screen.update must not overlap.
+//Besides the public settings it holds the per-view render state, so several views can be rendered at once
+public class Viewport {
+	public Camera camera;
+	public int[] pixels;
+	public int offset, stride, width, height;
+
+	//Perpendicular wall distance per column, sprites seen by the rays of each stripe,
+	//and the visible sprites of the frame projected to screen space and sorted far to near
+	double[] zBuffer = new double[0];
+	SpriteGrid spriteGrid = new SpriteGrid();
+	int[][] stripeSeen, stripeStamp;
+	int[] stripeSeenCount, seenStamp;
+	int frame;
+	long[] spriteOrder;
+	int visibleSprites;
+	double[] spriteDepth;
+	int[] spriteScreenX, spriteWidth, spriteHeight;
+	int[][] spriteImage;
+
+	public Viewport(Camera c, int[] p, int o, int s, int w, int h) {
+		camera = c;
+		pixels = p;
+		offset = o;
+		stride = s;
+		width = w;
+		height = h;
+	}
+
+	//Makes sure the render state fits the current size, stripe count and number of sprites
+	void prepare(int stripes, int sprites) {
+		if(zBuffer.length < width)
+			zBuffer = new double[width];
+		if(stripeSeenCount == null || stripeSeenCount.length != stripes || seenStamp.length != sprites) {
+			stripeSeenCount = new int[stripes];
+			stripeSeen = new int[stripes][sprites];
+			stripeStamp = new int[stripes][sprites];
+			seenStamp = new int[sprites];
+			spriteOrder = new long[sprites];
+			spriteDepth = new double[sprites];
+			spriteScreenX = new int[sprites];
+			spriteWidth = new int[sprites];
+			spriteHeight = new int[sprites];
+			spriteImage = new int[sprites][];
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package playground;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+//Potentially visible sets: for every cluster of map cells, a bit set of the clusters that can be seen from it.
+//Small maps use one cell per cluster; larger maps group cells into square clusters so the sets stay at most
+//MAX_CLUSTERS squared bits. The sets are found by casting rays from sample points spread over each cluster, made
+//symmetric and grown by one cluster in every direction to cover what the sampling may miss. Rays stop after
+//MAX_DISTANCE cells; the renderer's distance fog has turned everything black well before that
+public class VisibilitySets {
+	private static final int MAGIC = 0x50565331;
+	private static final int HEADER_SIZE = 24;
+	private static final int MAX_CLUSTERS = 4096;
+	private static final int MAX_DISTANCE = 80;
+	private static final int SAMPLES = 4;
+	private static final int RAYS = 720;
+
+	private final int width, height, shift;
+	private final int clustersX, clustersY, words;
+	private final long[] bits;
+
+	private VisibilitySets(int w, int h, int s) {
+		width = w;
+		height = h;
+		shift = s;
+		clustersX = ((w - 1) >> s) + 1;
+		clustersY = ((h - 1) >> s) + 1;
+		words = (clustersX * clustersY + 63) >> 6;
+		bits = new long[clustersX * clustersY * words];
+	}
+
+	//Whether anything in cell (toX, toY) may be visible from cell (fromX, fromY)
+	public boolean visible(int fromX, int fromY, int toX, int toY) {
+		int from = cluster(fromX, fromY);
+		int to = cluster(toX, toY);
+		if(from < 0 || to < 0)
+			return true;
+		return (bits[from * words + (to >> 6)] & (1L << to)) != 0;
+	}
+
+	private int cluster(int x, int y) {
+		if(x < 0 || y < 0 || x >= width || y >= height)
+			return -1;
+		return (y >> shift) * clustersX + (x >> shift);
+	}
+
+	//Loads the sets for the map from the cache directory, or builds and caches them
+	public static VisibilitySets loadOrBuild(GameMap map, Path cacheDirectory) {
+		Path file = cacheDirectory == null ? null
+				: cacheDirectory.resolve(String.format("pvs-%dx%d-%s.bin", map.width, map.height, map.cacheKey()));
+		if(file != null && Files.isRegularFile(file)) {
+			try {
+				return load(file, map);
+			} catch(IOException e) {
+				//A broken cache file just means building the sets again
+			}
+		}
+
+		VisibilitySets sets = build(map);
+		if(file != null) {
+			try {
+				Files.createDirectories(cacheDirectory);
+				sets.save(file);
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return sets;
+	}
+
+	public static VisibilitySets build(GameMap map) {
+		int s = 0;
+		while((long)(((map.width - 1) >> s) + 1) * (((map.height - 1) >> s) + 1) > MAX_CLUSTERS)
+			s++;
+		VisibilitySets sets = new VisibilitySets(map.width, map.height, s);
+
+		//Every cluster only writes its own row, so the clusters can be handled in parallel
+		IntStream.range(0, sets.clustersX * sets.clustersY).parallel().forEach(c -> sets.castFrom(map, c));
+		sets.symmetrize();
+		sets.grow();
+		return sets;
+	}
+
+	private void castFrom(GameMap map, int from) {
+		int row = from * words;
+		int left = (from % clustersX) << shift;
+		int top = (from / clustersX) << shift;
+		int right = Math.min(left + (1 << shift), width);
+		int bottom = Math.min(top + (1 << shift), height);
+
+		for(int i = 0; i < SAMPLES; i++) {
+			for(int j = 0; j < SAMPLES; j++) {
+				double x = left + (right - left) * (i + 0.5) / SAMPLES;
+				double y = top + (bottom - top) * (j + 0.5) / SAMPLES;
+				if(map.get((int)x, (int)y) != 0)
+					continue;
+				for(int r = 0; r < RAYS; r++) {
+					double angle = 2 * Math.PI * r / RAYS;
+					castRay(map, row, x, y, Math.cos(angle), Math.sin(angle));
+				}
+			}
+		}
+		int self = cluster(left, top);
+		bits[row + (self >> 6)] |= 1L << self;
+	}
+
+	//Walks the cells along the ray (same DDA as the renderer) and marks their clusters
+	private void castRay(GameMap map, int row, double x, double y, double dirX, double dirY) {
+		int mapX = (int)x, mapY = (int)y;
+		double deltaX = Math.abs(1 / dirX), deltaY = Math.abs(1 / dirY);
+		int stepX = dirX < 0 ? -1 : 1;
+		int stepY = dirY < 0 ? -1 : 1;
+		double sideX = (dirX < 0 ? x - mapX : mapX + 1.0 - x) * deltaX;
+		double sideY = (dirY < 0 ? y - mapY : mapY + 1.0 - y) * deltaY;
+
+		while(Math.min(sideX, sideY) < MAX_DISTANCE) {
+			if(sideX < sideY) {
+				sideX += deltaX;
+				mapX += stepX;
+			} else {
+				sideY += deltaY;
+				mapY += stepY;
+			}
+
+			int to = cluster(mapX, mapY);
+			if(to < 0)
+				return;
+			bits[row + (to >> 6)] |= 1L << to;
+			if(map.get(mapX, mapY) != 0)
+				return;
+		}
+	}
+
+	private void symmetrize() {
+		int clusters = clustersX * clustersY;
+		for(int a = 0; a < clusters; a++)
+			for(int b = a + 1; b < clusters; b++)
+				if(get(a, b) || get(b, a)) {
+					set(a, b);
+					set(b, a);
+				}
+	}
+
+	//Adds the neighbours of every visible cluster
+	private void grow() {
+		long[] row = new long[words];
+		for(int a = 0; a < clustersX * clustersY; a++) {
+			System.arraycopy(bits, a * words, row, 0, words);
+			for(int b = 0; b < clustersX * clustersY; b++) {
+				if((row[b >> 6] & (1L << b)) == 0)
+					continue;
+				int bx = b % clustersX, by = b / clustersX;
+				for(int nx = Math.max(bx - 1, 0); nx <= Math.min(bx + 1, clustersX - 1); nx++)
+					for(int ny = Math.max(by - 1, 0); ny <= Math.min(by + 1, clustersY - 1); ny++)
+						set(a, ny * clustersX + nx);
+			}
+		}
+	}
+
+	private boolean get(int from, int to) {
+		return (bits[from * words + (to >> 6)] & (1L << to)) != 0;
+	}
+
+	private void set(int from, int to) {
+		bits[from * words + (to >> 6)] |= 1L << to;
+	}
+
+	public void save(Path file) throws IOException {
+		//Written to a temporary file first, so a half-written cache file is never picked up
+		Path temp = Files.createTempFile(file.getParent(), "pvs", ".tmp");
+		try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER_SIZE + bits.length * 8);
+			buffer.putInt(MAGIC).putInt(width).putInt(height).putInt(shift).putInt(MAX_DISTANCE).putInt(RAYS);
+			buffer.asLongBuffer().put(bits);
+			buffer.position(buffer.capacity());
+			buffer.flip();
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public static VisibilitySets load(Path file, GameMap map) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect((int)channel.size());
+			while(buffer.hasRemaining() && channel.read(buffer) >= 0);
+			buffer.flip();
+			if(buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != map.width
+					|| buffer.getInt() != map.height)
+				throw new IOException("Not a visibility file for this map: " + file);
+			int s = buffer.getInt();
+			if(buffer.getInt() != MAX_DISTANCE || buffer.getInt() != RAYS)
+				throw new IOException("Visibility file was built with other settings: " + file);
+
+			VisibilitySets sets = new VisibilitySets(map.width, map.height, s);
+			if(buffer.remaining() != sets.bits.length * 8)
+				throw new IOException("Truncated visibility file: " + file);
+			buffer.asLongBuffer().get(sets.bits);
+			return sets;
+		}
+	}
+}
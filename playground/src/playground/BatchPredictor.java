@@ -0,0 +1,48 @@
+package playground;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//Nearest neighbor prediction for a whole data set. The test points are split in halves until the pieces are
+//small enough, and the pieces are classified in parallel on the fork-join pool. Queries only read the tree and
+//every piece writes its own range of the result column, so no synchronization is needed
+public class BatchPredictor extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+	//Points per task; small enough to balance the load, large enough that forking costs nothing in comparison
+	private static final int BATCH_SIZE = 8192;
+
+	private final KDTree tree;
+	private final int[] labels;
+	private final ColorDataset test;
+	private final int from, to;
+
+	private BatchPredictor(KDTree t, int[] l, ColorDataset d, int f, int e) {
+		tree = t;
+		labels = l;
+		test = d;
+		from = f;
+		to = e;
+	}
+
+	//Writes the label of the nearest training point of every test point into test.predictedColor
+	public static void predict(KDTree tree, int[] labels, ColorDataset test) {
+		if(tree.size() == 0)
+			throw new IllegalArgumentException("Need at least one training point to predict colors");
+		ForkJoinPool.commonPool().invoke(new BatchPredictor(tree, labels, test, 0, test.size));
+	}
+
+	protected void compute() {
+		if(to - from <= BATCH_SIZE) {
+			classify();
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		invokeAll(new BatchPredictor(tree, labels, test, from, mid), new BatchPredictor(tree, labels, test, mid, to));
+	}
+
+	private void classify() {
+		int[] x = test.x, y = test.y, result = test.predictedColor;
+		for(int i = from; i < to; i++)
+			result[i] = labels[tree.nearest(x[i], y[i])];
+	}
+}
@@ -0,0 +1,44 @@
+package playground;
+
+import java.util.Random;
+
+//Points stored column by column: one primitive array per attribute instead of one object per point, so large
+//data sets take little memory and are read sequentially. Coordinates are integers
+public class ColorDataset {
+	public final int size;
+	public final int[] x, y, color, predictedColor;
+
+	public ColorDataset(int n) {
+		size = n;
+		x = new int[n];
+		y = new int[n];
+		color = new int[n];
+		predictedColor = new int[n];
+	}
+
+	//Same distribution as HelloWorld's example: color 1 in the upper left quadrant, color 0 in the lower right
+	public static ColorDataset random(int n, Random random) {
+		ColorDataset data = new ColorDataset(n);
+		for(int i = 0; i < n; i++) {
+			if(random.nextDouble() > 0.5) {
+				data.x[i] = -10 + (int)(10 * random.nextDouble());
+				data.y[i] = (int)(10 * random.nextDouble());
+				data.color[i] = 1;
+			} else {
+				data.x[i] = (int)(10 * random.nextDouble());
+				data.y[i] = -(int)(10 * random.nextDouble());
+				data.color[i] = 0;
+			}
+		}
+		return data;
+	}
+
+	//Share of points whose predicted color is their actual color
+	public double accuracy() {
+		int correct = 0;
+		for(int i = 0; i < size; i++)
+			if(predictedColor[i] == color[i])
+				correct++;
+		return size == 0 ? 0 : (double)correct / size;
+	}
+}
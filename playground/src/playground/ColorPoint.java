@@ -1,5 +0,0 @@
-package playground;
-
-public class ColorPoint {
-	public int x, y, color, predictedColor;
-}
@@ -1,72 +1,77 @@
 package playground;
 
+import java.util.Random;
+
 import org.w3c.dom.Text;
 
 public class HelloWorld {
 
-	public static void createDataSet() {
-		train = new ColorPoint[100];
-		test = new ColorPoint [100];
-		
-		for(int i = 0; i < 100; i++) {
-			train[i] = new ColorPoint();
-			test[i] = new ColorPoint();
-			if(java.lang.Math.random() > 0.5) {
-				train[i].x = -10 + (int)(10 * java.lang.Math.random());
-				train[i].y = (int)(10 * java.lang.Math.random());
-				train[i].color = 1;
-				
-				test[i].x = -10 + (int)(10 * java.lang.Math.random());
-				test[i].y = (int)(10 * java.lang.Math.random());
-				test[i].color = 1;
-			} else {
-				train[i].x = (int)(10 * java.lang.Math.random());
-				train[i].y = -(int)(10 * java.lang.Math.random());
-				train[i].color = 0;
-				
-				test[i].x = (int)(10 * java.lang.Math.random());
-				test[i].y = -(int)(10 * java.lang.Math.random());
-				test[i].color = 0;
-			}
-		}
+	public static void createDataSet(int n) {
+		Random random = new Random();
+		train = ColorDataset.random(n, random);
+		test = ColorDataset.random(n, random);
 	}
 	
 	public static void predict() {
-		double distance, bestDistance;
-		int nearestNeighbor = 0;
-		int correctPredictions = 0;
+		//The tree is built once; the test points are then classified in parallel batches
+		KDTree tree = new KDTree(train);
+		BatchPredictor.predict(tree, train.color, test);
+		accuracy = test.accuracy();
+	}
+	
+	//Classifies clustered float vectors with an LSH index and compares a sample of the results with an exact search
+	public static void predictVectors(int n, int dimension, int classes, int tables, int bits, int probes) {
+		Random random = new Random();
+		float[] centers = VectorDataset.randomCenters(classes, dimension, random);
+		VectorDataset vectorTrain = VectorDataset.clusters(n, dimension, classes, centers, 0.5, random);
+		VectorDataset vectorTest = VectorDataset.clusters(n / 10, dimension, classes, centers, 0.5, random);
 		
-		for(int i = 0; i < 100; i++) {
-			distance = 0;
-			bestDistance = 1000;
-			
-			for(int j = 0; j < 100; j++) {
-				distance = java.lang.Math.sqrt(java.lang.Math.pow(test[i].x - train[j].x, 2) + java.lang.Math.pow(test[i].y - train[j].y, 2));
-				if(distance < bestDistance) {
-					bestDistance = distance;
-					nearestNeighbor = j;
-				}
-			}
-			test[i].predictedColor = train[nearestNeighbor].color;
-			if (test[i].predictedColor == test[i].color) {
-				correctPredictions++;
-			} 
-		}
+		long start = System.nanoTime();
+		LSHIndex index = new LSHIndex(vectorTrain, tables, bits, probes, random.nextLong());
+		long built = System.nanoTime();
+		VectorPredictor.predict(index, vectorTrain, vectorTest);
+		long predicted = System.nanoTime();
 		
-		accuracy = (double)(correctPredictions)/100;
+		//Recall: how often the index finds the same neighbor as comparing with every training vector
+		int sample = Math.min(vectorTest.size, 200), found = 0;
+		LSHIndex.Query query = index.newQuery();
+		for(int i = 0; i < sample; i++) {
+			int offset = i * dimension;
+			if(index.nearest(vectorTest.values, offset, query) == vectorTrain.nearest(vectorTest.values, offset))
+				found++;
+		}
+		System.out.println("Index built in " + (built - start) / 1000000 + " ms, " + vectorTest.size + " vectors classified in "
+				+ (predicted - built) / 1000000 + " ms");
+		System.out.println("Accuracy: " + vectorTest.accuracy() + ", recall: " + (double)found / Math.max(1, sample));
 	}
 	
+	//Optionally takes the number of training and test points; only small data sets are printed.
+	//"vectors [n] [dimension] [classes] [tables] [bits] [probes]" runs the vector classifier instead
 	public static void main(String[] args) {
-		createDataSet();
+		if(args.length > 0 && args[0].equals("vectors")) {
+			int[] options = {100000, 64, 10, 8, 12, 4};
+			for(int i = 1; i < args.length && i <= options.length; i++)
+				options[i - 1] = Integer.parseInt(args[i]);
+			predictVectors(options[0], options[1], options[2], options[3], options[4], options[5]);
+			return;
+		}
+		
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		createDataSet(n);
+		long start = System.nanoTime();
 		predict();
+		long time = System.nanoTime() - start;
 
-		for(int i = 0; i < 100; i++) {
-			System.out.println("{" + test[i].x + ", " + test[i].y + ", " + test[i].color + ", " + test[i].predictedColor + "}");
+		if(n <= 100) {
+			for(int i = 0; i < n; i++) {
+				System.out.println("{" + test.x[i] + ", " + test.y[i] + ", " + test.color[i] + ", " + test.predictedColor[i] + "}");
+			}
 		}
 		System.out.println("Accuracy: " + accuracy);
+		System.out.println("Classified " + n + " points in " + time / 1000000 + " ms");
 		
 	}
 	
-	private static ColorPoint [] train, test;
+	private static ColorDataset train, test;
 	private static double accuracy;
 }
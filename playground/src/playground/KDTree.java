@@ -0,0 +1,135 @@
+package playground;
+
+import java.util.Arrays;
+
+//Two-dimensional k-d tree over the training points for exact nearest neighbor queries. The tree is stored
+//implicitly: the points are reordered so that the middle of every range is the node splitting it, alternately
+//along x and y, and its left and right halves are the two subtrees. Building takes O(n log n), a query
+//O(log n) on average. Queries only read the tree, so any number of threads can run them at once
+public class KDTree {
+	private int[] xs, ys, index;
+
+	//Points at the same position are stored once, under their lowest index: a query for such a position would
+	//otherwise have to visit all of them to find that index, which makes data with many duplicates very slow
+	public KDTree(ColorDataset points) {
+		int n = points.size;
+		long[] keys = new long[n];
+		for(int i = 0; i < n; i++)
+			keys[i] = key(points.x[i], points.y[i]);
+		Arrays.sort(keys);
+		int unique = 0;
+		for(int i = 0; i < n; i++)
+			if(unique == 0 || keys[i] != keys[unique - 1])
+				keys[unique++] = keys[i];
+
+		xs = new int[unique];
+		ys = new int[unique];
+		index = new int[unique];
+		Arrays.fill(index, -1);
+		for(int i = 0; i < n; i++) {
+			int u = Arrays.binarySearch(keys, 0, unique, key(points.x[i], points.y[i]));
+			if(index[u] < 0) {
+				index[u] = i;
+				xs[u] = points.x[i];
+				ys[u] = points.y[i];
+			}
+		}
+		build(0, unique, 0);
+	}
+
+	private static long key(int x, int y) {
+		return ((long)x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	//Number of distinct positions in the tree
+	public int size() {
+		return index.length;
+	}
+
+	//Index of the point closest to (x, y); on equal distances the lowest index wins, like a linear search would
+	public int nearest(int x, int y) {
+		if(index.length == 0)
+			return -1;
+		long[] best = {Long.MAX_VALUE, Integer.MAX_VALUE};
+		search(0, index.length, 0, x, y, best);
+		return (int)best[1];
+	}
+
+	private void build(int lo, int hi, int axis) {
+		while(hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			select(lo, hi, mid, axis == 0 ? xs : ys);
+			//Recurse into the smaller half and loop on the other, so the stack stays O(log n)
+			if(mid - lo < hi - mid - 1) {
+				build(lo, mid, axis ^ 1);
+				lo = mid + 1;
+			} else {
+				build(mid + 1, hi, axis ^ 1);
+				hi = mid;
+			}
+			axis ^= 1;
+		}
+	}
+
+	//Quickselect: puts the k-th smallest key of the range at k, smaller or equal keys before it and
+	//greater or equal ones after it
+	private void select(int lo, int hi, int k, int[] keys) {
+		hi--;
+		while(hi > lo) {
+			int pivot = keys[(lo + hi) >>> 1];
+			int i = lo, j = hi;
+			while(i <= j) {
+				while(keys[i] < pivot)
+					i++;
+				while(keys[j] > pivot)
+					j--;
+				if(i <= j)
+					swap(i++, j--);
+			}
+			if(k <= j)
+				hi = j;
+			else if(k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	private void swap(int a, int b) {
+		int t = xs[a];
+		xs[a] = xs[b];
+		xs[b] = t;
+		t = ys[a];
+		ys[a] = ys[b];
+		ys[b] = t;
+		t = index[a];
+		index[a] = index[b];
+		index[b] = t;
+	}
+
+	//best holds the squared distance and index of the closest point found so far
+	private void search(int lo, int hi, int axis, int x, int y, long[] best) {
+		if(lo >= hi)
+			return;
+		int mid = (lo + hi) >>> 1;
+		long dx = (long)xs[mid] - x, dy = (long)ys[mid] - y;
+		long distance = dx * dx + dy * dy;
+		if(distance < best[0] || (distance == best[0] && index[mid] < best[1])) {
+			best[0] = distance;
+			best[1] = index[mid];
+		}
+
+		//Visit the side the query point is on first; the other side can only hold a closer point
+		//if the splitting line is not farther away than the best point so far
+		long offset = axis == 0 ? x - (long)xs[mid] : y - (long)ys[mid];
+		if(offset < 0) {
+			search(lo, mid, axis ^ 1, x, y, best);
+			if(offset * offset <= best[0])
+				search(mid + 1, hi, axis ^ 1, x, y, best);
+		} else {
+			search(mid + 1, hi, axis ^ 1, x, y, best);
+			if(offset * offset <= best[0])
+				search(lo, mid, axis ^ 1, x, y, best);
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package playground;
+
+import java.util.Arrays;
+import java.util.Random;
+
+//Approximate nearest neighbor search with random projection locality sensitive hashing. Every table hashes a
+//vector to the signs of its projections onto a few random hyperplanes, so close vectors tend to land in the same
+//bucket. A query only compares the vectors in its buckets: in every table the bucket of the query itself, and
+//with more than one probe also the buckets reached by flipping the bits whose projections were closest to zero.
+//More tables and probes raise the chance of finding the true nearest neighbor (recall) at the cost of looking at
+//more candidates; more bits per table make the buckets smaller and queries faster, but lower the recall.
+//Bits are capped so that a table never has more than about twice as many buckets as there are vectors
+public class LSHIndex {
+	public static final int MAX_BITS = 20;
+
+	private final VectorDataset data;
+	private final int tables, bits, probes;
+	//Hyperplane normals, bits of them per table, and the projection of the data's mean onto each: the planes go
+	//through the mean rather than the origin, so they cut through the data instead of past it
+	private final float[] planes, planeOffsets;
+	//Per table the members of all buckets sorted by hash, and where each bucket starts among them
+	private final int[][] bucketStart, members;
+
+	public LSHIndex(VectorDataset d, int tableCount, int bitCount, int probeCount, long seed) {
+		if(bitCount < 1 || bitCount > MAX_BITS)
+			throw new IllegalArgumentException("Bits per table must be between 1 and " + MAX_BITS);
+		if(tableCount < 1 || probeCount < 1 || probeCount > bitCount + 1)
+			throw new IllegalArgumentException("Need at least one table and between 1 and bits + 1 probes");
+		data = d;
+		tables = tableCount;
+		bits = Math.min(bitCount, Math.max(1, 32 - Integer.numberOfLeadingZeros(d.size)));
+		probes = Math.min(probeCount, bits + 1);
+
+		Random random = new Random(seed);
+		planes = new float[tables * bits * data.dimension];
+		for(int i = 0; i < planes.length; i++)
+			planes[i] = (float)random.nextGaussian();
+		double[] mean = new double[data.dimension];
+		for(int i = 0; i < data.values.length; i++)
+			mean[i % data.dimension] += data.values[i] / Math.max(1, data.size);
+		planeOffsets = new float[tables * bits];
+		for(int p = 0; p < planeOffsets.length; p++) {
+			double dot = 0;
+			for(int j = 0; j < data.dimension; j++)
+				dot += planes[p * data.dimension + j] * mean[j];
+			planeOffsets[p] = (float)dot;
+		}
+
+		//Counting sort of the vectors by hash, one table at a time
+		bucketStart = new int[tables][];
+		members = new int[tables][];
+		float[] projections = new float[bits];
+		int[] hashes = new int[data.size];
+		for(int t = 0; t < tables; t++) {
+			int[] start = new int[(1 << bits) + 1];
+			for(int i = 0; i < data.size; i++) {
+				hashes[i] = hash(t, data.values, i * data.dimension, projections);
+				start[hashes[i] + 1]++;
+			}
+			for(int b = 0; b < 1 << bits; b++)
+				start[b + 1] += start[b];
+
+			int[] next = start.clone();
+			int[] sorted = new int[data.size];
+			for(int i = 0; i < data.size; i++)
+				sorted[next[hashes[i]]++] = i;
+			bucketStart[t] = start;
+			members[t] = sorted;
+		}
+	}
+
+	//Scratch space for nearest(); every thread running queries needs its own
+	public Query newQuery() {
+		return new Query(bits, data.size);
+	}
+
+	//Index of the closest vector found for the one at offset in query, or -1 if all its buckets are empty.
+	//Safe to call from several threads at once, as long as each passes its own scratch space
+	public int nearest(float[] query, int offset, Query q) {
+		if(++q.stamp == 0) {
+			Arrays.fill(q.seen, 0);
+			q.stamp = 1;
+		}
+
+		int best = -1;
+		float bestDistance = Float.POSITIVE_INFINITY;
+		for(int t = 0; t < tables; t++) {
+			int hash = hash(t, query, offset, q.projections);
+			orderBits(q);
+			for(int p = 0; p < probes; p++) {
+				int bucket = p == 0 ? hash : hash ^ (1 << q.order[p - 1]);
+				int[] start = bucketStart[t];
+				for(int m = start[bucket]; m < start[bucket + 1]; m++) {
+					int i = members[t][m];
+					if(q.seen[i] == q.stamp)
+						continue;
+					q.seen[i] = q.stamp;
+					float distance = data.distance(i, query, offset);
+					if(distance < bestDistance) {
+						bestDistance = distance;
+						best = i;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	//Sign bits of the projections onto the hyperplanes of table t; the projections are kept for multi-probing
+	private int hash(int table, float[] vector, int offset, float[] projections) {
+		int hash = 0;
+		int d = data.dimension;
+		for(int b = 0; b < bits; b++) {
+			int plane = (table * bits + b) * d;
+			float dot = -planeOffsets[table * bits + b];
+			for(int j = 0; j < d; j++)
+				dot += planes[plane + j] * vector[offset + j];
+			projections[b] = dot;
+			if(dot >= 0)
+				hash |= 1 << b;
+		}
+		return hash;
+	}
+
+	//Puts the probes - 1 bits with the smallest absolute projection first in q.order, least certain first
+	private void orderBits(Query q) {
+		for(int p = 0; p < probes - 1; p++) {
+			int best = -1;
+			for(int b = 0; b < bits; b++) {
+				boolean used = false;
+				for(int k = 0; k < p; k++)
+					used |= q.order[k] == b;
+				if(!used && (best < 0 || Math.abs(q.projections[b]) < Math.abs(q.projections[best])))
+					best = b;
+			}
+			q.order[p] = best;
+		}
+	}
+
+	public static class Query {
+		private final float[] projections;
+		private final int[] order;
+		//Vectors already compared in this query are marked with its stamp
+		private final int[] seen;
+		private int stamp;
+
+		private Query(int bits, int size) {
+			projections = new float[bits];
+			order = new int[bits];
+			seen = new int[size];
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package playground;
+
+import java.util.Random;
+
+//Points with dense float feature vectors of any dimension and any number of classes. The vectors are stored
+//one after another in a single array, so vector i starts at values[i * dimension]
+public class VectorDataset {
+	public final int size, dimension;
+	public final float[] values;
+	public final int[] label, predictedLabel;
+
+	public VectorDataset(int n, int d) {
+		size = n;
+		dimension = d;
+		values = new float[n * d];
+		label = new int[n];
+		predictedLabel = new int[n];
+	}
+
+	//Class centers spread uniformly over [-1, 1] in every dimension, for clusters()
+	public static float[] randomCenters(int classes, int d, Random random) {
+		float[] centers = new float[classes * d];
+		for(int i = 0; i < centers.length; i++)
+			centers[i] = (float)(2 * random.nextDouble() - 1);
+		return centers;
+	}
+
+	//One Gaussian cluster per class around the given centers; training and test data drawn with the same centers
+	//follow the same distribution
+	public static VectorDataset clusters(int n, int d, int classes, float[] centers, double spread, Random random) {
+		VectorDataset data = new VectorDataset(n, d);
+		for(int i = 0; i < n; i++) {
+			int c = random.nextInt(classes);
+			data.label[i] = c;
+			for(int j = 0; j < d; j++)
+				data.values[i * d + j] = centers[c * d + j] + (float)(random.nextGaussian() * spread);
+		}
+		return data;
+	}
+
+	//Squared Euclidean distance between vector i and the vector at offset in query
+	public float distance(int i, float[] query, int offset) {
+		float sum = 0;
+		int base = i * dimension;
+		for(int j = 0; j < dimension; j++) {
+			float diff = values[base + j] - query[offset + j];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+	//Index of the vector closest to the one at offset in query, by comparing with all of them
+	public int nearest(float[] query, int offset) {
+		int best = -1;
+		float bestDistance = Float.POSITIVE_INFINITY;
+		for(int i = 0; i < size; i++) {
+			float distance = distance(i, query, offset);
+			if(distance < bestDistance) {
+				bestDistance = distance;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	public double accuracy() {
+		int correct = 0;
+		for(int i = 0; i < size; i++)
+			if(predictedLabel[i] == label[i])
+				correct++;
+		return size == 0 ? 0 : (double)correct / size;
+	}
+}
@@ -0,0 +1,46 @@
+package playground;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//Approximate nearest neighbor prediction for a whole vector data set, split into batches on the fork-join pool
+//like BatchPredictor. Test points whose buckets are all empty fall back to an exact search
+public class VectorPredictor extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+	private static final int BATCH_SIZE = 1024;
+
+	private final LSHIndex index;
+	private final VectorDataset train, test;
+	private final int from, to;
+
+	private VectorPredictor(LSHIndex i, VectorDataset tr, VectorDataset te, int f, int e) {
+		index = i;
+		train = tr;
+		test = te;
+		from = f;
+		to = e;
+	}
+
+	//Writes the label of the nearest training vector found for every test vector into test.predictedLabel
+	public static void predict(LSHIndex index, VectorDataset train, VectorDataset test) {
+		if(train.size == 0)
+			throw new IllegalArgumentException("Need at least one training vector to predict labels");
+		ForkJoinPool.commonPool().invoke(new VectorPredictor(index, train, test, 0, test.size));
+	}
+
+	protected void compute() {
+		if(to - from <= BATCH_SIZE) {
+			LSHIndex.Query query = index.newQuery();
+			for(int i = from; i < to; i++) {
+				int offset = i * test.dimension;
+				int nearest = index.nearest(test.values, offset, query);
+				if(nearest < 0)
+					nearest = train.nearest(test.values, offset);
+				test.predictedLabel[i] = train.label[nearest];
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		invokeAll(new VectorPredictor(index, train, test, from, mid), new VectorPredictor(index, train, test, mid, to));
+	}
+}